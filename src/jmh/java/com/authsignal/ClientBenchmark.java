@@ -0,0 +1,71 @@
+package com.authsignal;
+
+import com.authsignal.json.JsonCodec;
+import com.authsignal.model.TrackAttributes;
+import com.authsignal.model.TrackRequest;
+import com.authsignal.model.TrackResponse;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.net.URISyntaxException;
+import java.net.http.HttpRequest;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building the {@link HttpRequest}s sent for each API call, and a full track() call
+ * against an in-process stub server.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClientBenchmark {
+    private BenchmarkServer server;
+    private AuthsignalClient client;
+    private TrackRequest trackRequest;
+    private byte[] trackBody;
+
+    @Setup
+    public void setup() throws Exception {
+        server = new BenchmarkServer("{\"idempotencyKey\":\"6b5b6a5e-7a4b-4a3a-9f3b-2f3b4c5d6e7f\","
+                + "\"state\":\"ALLOW\",\"isEnrolled\":true,\"allowedVerificationMethods\":[\"SMS\"],"
+                + "\"enrolledVerificationMethods\":[\"SMS\"],\"ruleIds\":[]}");
+
+        AuthsignalClientOptions options = new AuthsignalClientOptions();
+        options.retries = 0;
+
+        client = new AuthsignalClient("secret", server.getBaseURL(), options);
+
+        trackRequest = new TrackRequest();
+        trackRequest.userId = "b9f74d36-fcfc-4efc-87f1-3664ab5a7fb0";
+        trackRequest.action = "signIn";
+        trackRequest.attributes = new TrackAttributes();
+        trackRequest.attributes.ipAddress = "203.0.113.10";
+        trackRequest.attributes.userAgent = "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7)";
+
+        trackBody = JsonCodec.getDefault().toBytes(trackRequest.attributes);
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    public HttpRequest buildGetRequest() throws URISyntaxException {
+        return client.buildGetRequest("/users/b9f74d36-fcfc-4efc-87f1-3664ab5a7fb0");
+    }
+
+    @Benchmark
+    public HttpRequest buildPostRequest() throws URISyntaxException {
+        return client.buildPostRequest("/users/b9f74d36-fcfc-4efc-87f1-3664ab5a7fb0/actions/signIn", trackBody);
+    }
+
+    @Benchmark
+    public TrackResponse track() {
+        return client.track(trackRequest).join();
+    }
+}
@@ -0,0 +1,257 @@
+package com.authsignal;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * An in-process server which answers every request with a fixed JSON body over HTTP/1.1 or, for
+ * clients that ask to upgrade, over cleartext HTTP/2 (h2c).
+ *
+ * Both protocols are served by the same code with one thread per connection, so a benchmark run
+ * against it compares the protocols rather than two different servers. The HTTP/2 side is only as
+ * much of the protocol as the JDK client needs: request headers are skipped rather than decoded,
+ * and responses are small enough to fit in one frame and the default flow control window.
+ */
+class H2cBenchmarkServer implements AutoCloseable {
+    private static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int DATA = 0x0;
+    private static final int HEADERS = 0x1;
+    private static final int SETTINGS = 0x4;
+    private static final int PING = 0x6;
+    private static final int GOAWAY = 0x7;
+    private static final int WINDOW_UPDATE = 0x8;
+
+    private static final int END_STREAM = 0x1;
+    private static final int ACK = 0x1;
+    private static final int END_HEADERS = 0x4;
+
+    private static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "h2c-benchmark-server");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final byte[] body;
+    private final byte[] http1Head;
+    private final byte[] http2Headers;
+
+    H2cBenchmarkServer(String responseBody) throws IOException {
+        body = responseBody.getBytes(StandardCharsets.UTF_8);
+        http1Head = ("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nContent-Length: " + body.length
+                + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+
+        // HPACK: ":status: 200" from the static table, then content-type as a literal with an indexed name
+        byte[] contentType = "application/json".getBytes(StandardCharsets.US_ASCII);
+        ByteArrayOutputStream headers = new ByteArrayOutputStream();
+        headers.write(0x88);
+        headers.write(0x0f);
+        headers.write(31 - 15);
+        headers.write(contentType.length);
+        headers.write(contentType, 0, contentType.length);
+        http2Headers = headers.toByteArray();
+
+        serverSocket = new ServerSocket(0, 1024, InetAddress.getLoopbackAddress());
+        executor.execute(this::accept);
+    }
+
+    String getBaseURL() {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/v1";
+    }
+
+    @Override
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException ex) {
+            // Already closed
+        }
+
+        executor.shutdownNow();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                executor.execute(() -> serve(socket));
+            } catch (IOException ex) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket connection = socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+            OutputStream out = connection.getOutputStream();
+
+            while (true) {
+                String head = readHead(in);
+
+                if (head == null) {
+                    return;
+                }
+
+                skip(in, headerValue(head, "content-length"));
+
+                String upgrade = headerValue(head, "upgrade");
+
+                if (upgrade != null && upgrade.equalsIgnoreCase("h2c")) {
+                    out.write(("HTTP/1.1 101 Switching Protocols\r\nConnection: Upgrade\r\nUpgrade: h2c\r\n\r\n")
+                            .getBytes(StandardCharsets.US_ASCII));
+                    serveHttp2(in, out);
+                    return;
+                }
+
+                out.write(http1Head);
+                out.write(body);
+                out.flush();
+            }
+        } catch (IOException ex) {
+            // The client closed the connection
+        }
+    }
+
+    private void serveHttp2(DataInputStream in, OutputStream out) throws IOException {
+        ByteBuffer settings = ByteBuffer.allocate(6);
+        settings.putShort((short) SETTINGS_MAX_CONCURRENT_STREAMS).putInt(10_000);
+        writeFrame(out, SETTINGS, 0, 0, settings.array());
+
+        byte[] preface = new byte[PREFACE.length];
+        in.readFully(preface);
+
+        // The upgraded request is answered on stream 1
+        respond(out, 1);
+
+        byte[] frameHeader = new byte[9];
+
+        while (true) {
+            in.readFully(frameHeader);
+
+            int length = (frameHeader[0] & 0xff) << 16 | (frameHeader[1] & 0xff) << 8 | (frameHeader[2] & 0xff);
+            int type = frameHeader[3] & 0xff;
+            int flags = frameHeader[4] & 0xff;
+            int streamId = ByteBuffer.wrap(frameHeader, 5, 4).getInt() & 0x7fffffff;
+
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+
+            switch (type) {
+                case SETTINGS:
+                    if ((flags & ACK) == 0) {
+                        writeFrame(out, SETTINGS, ACK, 0, new byte[0]);
+                    }
+                    break;
+                case PING:
+                    if ((flags & ACK) == 0) {
+                        writeFrame(out, PING, ACK, 0, payload);
+                    }
+                    break;
+                case HEADERS:
+                    if ((flags & END_STREAM) != 0) {
+                        respond(out, streamId);
+                    }
+                    break;
+                case DATA:
+                    if (length > 0) {
+                        // Give back the flow control window the request body used
+                        byte[] increment = ByteBuffer.allocate(4).putInt(length).array();
+                        writeFrame(out, WINDOW_UPDATE, 0, 0, increment);
+
+                        if ((flags & END_STREAM) == 0) {
+                            writeFrame(out, WINDOW_UPDATE, 0, streamId, increment);
+                        }
+                    }
+
+                    if ((flags & END_STREAM) != 0) {
+                        respond(out, streamId);
+                    }
+                    break;
+                case GOAWAY:
+                    return;
+                default:
+                    // Priority, window updates, resets and continuations need no answer here
+                    break;
+            }
+        }
+    }
+
+    private void respond(OutputStream out, int streamId) throws IOException {
+        ByteBuffer frames = ByteBuffer.allocate(18 + http2Headers.length + body.length);
+        putFrame(frames, HEADERS, END_HEADERS, streamId, http2Headers);
+        putFrame(frames, DATA, END_STREAM, streamId, body);
+
+        out.write(frames.array());
+        out.flush();
+    }
+
+    private static void writeFrame(OutputStream out, int type, int flags, int streamId, byte[] payload)
+            throws IOException {
+        ByteBuffer frame = ByteBuffer.allocate(9 + payload.length);
+        putFrame(frame, type, flags, streamId, payload);
+
+        out.write(frame.array());
+        out.flush();
+    }
+
+    private static void putFrame(ByteBuffer frame, int type, int flags, int streamId, byte[] payload) {
+        frame.put((byte) (payload.length >>> 16)).put((byte) (payload.length >>> 8)).put((byte) payload.length);
+        frame.put((byte) type).put((byte) flags).putInt(streamId).put(payload);
+    }
+
+    private static String readHead(DataInputStream in) throws IOException {
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        int matched = 0;
+
+        while (matched < 4) {
+            int next = in.read();
+
+            if (next == -1) {
+                if (head.size() == 0) {
+                    return null;
+                }
+
+                throw new EOFException();
+            }
+
+            head.write(next);
+            matched = next == (matched % 2 == 0 ? '\r' : '\n') ? matched + 1 : (next == '\r' ? 1 : 0);
+        }
+
+        return head.toString("US-ASCII");
+    }
+
+    private static String headerValue(String head, String name) {
+        for (String line : head.split("\r\n")) {
+            int colon = line.indexOf(':');
+
+            if (colon > 0 && line.substring(0, colon).trim().toLowerCase(Locale.ROOT).equals(name)) {
+                return line.substring(colon + 1).trim();
+            }
+        }
+
+        return null;
+    }
+
+    private static void skip(DataInputStream in, String contentLength) throws IOException {
+        if (contentLength != null) {
+            in.readFully(new byte[Integer.parseInt(contentLength)]);
+        }
+    }
+}
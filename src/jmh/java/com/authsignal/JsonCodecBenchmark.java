@@ -0,0 +1,129 @@
+package com.authsignal;
+
+import com.authsignal.json.GsonJsonCodec;
+import com.authsignal.json.JacksonJsonCodec;
+import com.authsignal.model.TrackAttributes;
+import com.authsignal.model.TrackResponse;
+import com.authsignal.model.UserAuthenticator;
+import com.authsignal.model.ValidateChallengeResponse;
+import com.google.gson.Gson;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares a new reflective {@link Gson} per call, as the client used to do, with the shared
+ * {@link GsonJsonCodec} and its streaming model adapters, and with {@link JacksonJsonCodec}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonCodecBenchmark {
+    private static final String TRACK_RESPONSE = "{\"idempotencyKey\":\"6b5b6a5e-7a4b-4a3a-9f3b-2f3b4c5d6e7f\","
+            + "\"state\":\"CHALLENGE_REQUIRED\",\"url\":\"https://example.com/challenge\",\"token\":\"eyJhbGciOi\","
+            + "\"isEnrolled\":true,\"allowedVerificationMethods\":[\"SMS\",\"PASSKEY\",\"EMAIL_OTP\"],"
+            + "\"enrolledVerificationMethods\":[\"SMS\"],\"defaultVerificationMethod\":\"SMS\",\"ruleIds\":[\"r1\"]}";
+
+    private static final String VALIDATE_CHALLENGE_RESPONSE = "{\"isValid\":true,\"state\":\"CHALLENGE_SUCCEEDED\","
+            + "\"stateUpdatedAt\":\"2025-02-20T01:51:56.070Z\",\"userId\":\"user\",\"actionCode\":\"signIn\","
+            + "\"idempotencyKey\":\"key\",\"verificationMethod\":\"SMS\"}";
+
+    private static final String USER_AUTHENTICATORS = "[{\"userId\":\"user\",\"userAuthenticatorId\":\"a\","
+            + "\"verificationMethod\":\"PASSKEY\",\"createdAt\":\"2025-02-20T01:51:56.070Z\","
+            + "\"webauthnCredential\":{\"credentialId\":\"id\",\"name\":\"iCloud Keychain\",\"credentialBackedUp\":true,"
+            + "\"aaguidMapping\":{\"name\":\"iCloud Keychain\"},\"parsedUserAgent\":{\"ua\":\"Mozilla/5.0\","
+            + "\"browser\":{\"name\":\"Chrome\",\"version\":\"120\"}}}},{\"userId\":\"user\",\"userAuthenticatorId\":\"b\","
+            + "\"verificationMethod\":\"SMS\",\"phoneNumber\":\"+6427000000\"}]";
+
+    private final GsonJsonCodec codec = new GsonJsonCodec();
+    private final JacksonJsonCodec jacksonCodec = new JacksonJsonCodec();
+
+    private TrackAttributes trackAttributes;
+    private byte[] trackResponse;
+    private byte[] validateChallengeResponse;
+    private byte[] userAuthenticators;
+
+    @Setup
+    public void setup() {
+        trackAttributes = new TrackAttributes();
+        trackAttributes.ipAddress = "203.0.113.10";
+        trackAttributes.userAgent = "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7)";
+        trackAttributes.deviceId = "device";
+        trackAttributes.custom = new HashMap<>();
+
+        for (int i = 0; i < 20; i++) {
+            trackAttributes.custom.put("key" + i, "value" + i);
+        }
+
+        trackResponse = TRACK_RESPONSE.getBytes(StandardCharsets.UTF_8);
+        validateChallengeResponse = VALIDATE_CHALLENGE_RESPONSE.getBytes(StandardCharsets.UTF_8);
+        userAuthenticators = USER_AUTHENTICATORS.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String serializeTrackAttributesNewGson() {
+        return new Gson().toJson(trackAttributes);
+    }
+
+    @Benchmark
+    public byte[] serializeTrackAttributesCodec() {
+        return codec.toBytes(trackAttributes);
+    }
+
+    @Benchmark
+    public byte[] serializeTrackAttributesJackson() {
+        return jacksonCodec.toBytes(trackAttributes);
+    }
+
+    @Benchmark
+    public TrackResponse deserializeTrackResponseNewGson() {
+        return new Gson().fromJson(new String(trackResponse, StandardCharsets.UTF_8), TrackResponse.class);
+    }
+
+    @Benchmark
+    public TrackResponse deserializeTrackResponseCodec() {
+        return codec.fromBytes(trackResponse, TrackResponse.class);
+    }
+
+    @Benchmark
+    public TrackResponse deserializeTrackResponseJackson() {
+        return jacksonCodec.fromBytes(trackResponse, TrackResponse.class);
+    }
+
+    @Benchmark
+    public ValidateChallengeResponse deserializeValidateChallengeResponseNewGson() {
+        return new Gson().fromJson(new String(validateChallengeResponse, StandardCharsets.UTF_8),
+                ValidateChallengeResponse.class);
+    }
+
+    @Benchmark
+    public ValidateChallengeResponse deserializeValidateChallengeResponseCodec() {
+        return codec.fromBytes(validateChallengeResponse, ValidateChallengeResponse.class);
+    }
+
+    @Benchmark
+    public ValidateChallengeResponse deserializeValidateChallengeResponseJackson() {
+        return jacksonCodec.fromBytes(validateChallengeResponse, ValidateChallengeResponse.class);
+    }
+
+    @Benchmark
+    public UserAuthenticator[] deserializeUserAuthenticatorsNewGson() {
+        return new Gson().fromJson(new String(userAuthenticators, StandardCharsets.UTF_8), UserAuthenticator[].class);
+    }
+
+    @Benchmark
+    public UserAuthenticator[] deserializeUserAuthenticatorsCodec() {
+        return codec.fromBytes(userAuthenticators, UserAuthenticator[].class);
+    }
+
+    @Benchmark
+    public UserAuthenticator[] deserializeUserAuthenticatorsJackson() {
+        return jacksonCodec.fromBytes(userAuthenticators, UserAuthenticator[].class);
+    }
+}
@@ -0,0 +1,95 @@
+package com.authsignal;
+
+import com.authsignal.json.JsonCodec;
+import com.authsignal.model.GetUserResponse;
+import com.authsignal.model.TrackAttributes;
+import com.authsignal.model.TrackResponse;
+import com.authsignal.model.UserAuthenticator;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the default codec on the request and response models of the busiest endpoints,
+ * with custom data maps of increasing size.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ModelSerializationBenchmark {
+    @Param({ "0", "10", "100", "1000" })
+    public int customSize;
+
+    private final JsonCodec codec = JsonCodec.getDefault();
+
+    private TrackAttributes trackAttributes;
+    private byte[] trackResponse;
+    private byte[] getUserResponse;
+    private byte[] userAuthenticators;
+
+    @Setup
+    public void setup() {
+        trackAttributes = new TrackAttributes();
+        trackAttributes.ipAddress = "203.0.113.10";
+        trackAttributes.userAgent = "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7)";
+        trackAttributes.custom = new HashMap<>();
+
+        StringBuilder custom = new StringBuilder("{");
+
+        for (int i = 0; i < customSize; i++) {
+            trackAttributes.custom.put("key" + i, i % 2 == 0 ? "value" + i : (Object) i);
+            custom.append(i > 0 ? "," : "").append("\"key").append(i).append("\":\"value").append(i).append("\"");
+        }
+
+        custom.append("}");
+
+        trackResponse = ("{\"idempotencyKey\":\"6b5b6a5e-7a4b-4a3a-9f3b-2f3b4c5d6e7f\",\"state\":\"CHALLENGE_REQUIRED\","
+                + "\"url\":\"https://example.com/challenge\",\"token\":\"eyJhbGciOi\",\"isEnrolled\":true,"
+                + "\"allowedVerificationMethods\":[\"SMS\",\"PASSKEY\"],\"enrolledVerificationMethods\":[\"SMS\"],"
+                + "\"defaultVerificationMethod\":\"SMS\",\"ruleIds\":[\"r1\"]}").getBytes(StandardCharsets.UTF_8);
+
+        getUserResponse = ("{\"userId\":\"user\",\"email\":\"user@example.com\",\"phoneNumber\":\"+6427000000\","
+                + "\"isEnrolled\":true,\"allowedVerificationMethods\":[\"SMS\",\"PASSKEY\"],"
+                + "\"enrolledVerificationMethods\":[\"SMS\"],\"defaultVerificationMethod\":\"SMS\","
+                + "\"custom\":" + custom + "}").getBytes(StandardCharsets.UTF_8);
+
+        StringBuilder authenticators = new StringBuilder("[");
+
+        for (int i = 0; i < 10; i++) {
+            authenticators.append(i > 0 ? "," : "")
+                    .append("{\"userId\":\"user\",\"userAuthenticatorId\":\"").append(i)
+                    .append("\",\"verificationMethod\":\"PASSKEY\",\"createdAt\":\"2025-02-20T01:51:56.070Z\",")
+                    .append("\"webauthnCredential\":{\"credentialId\":\"id\",\"name\":\"iCloud Keychain\",")
+                    .append("\"aaguidMapping\":{\"name\":\"iCloud Keychain\"},\"parsedUserAgent\":{")
+                    .append("\"ua\":\"Mozilla/5.0\",\"browser\":{\"name\":\"Chrome\",\"version\":\"120\"}}}}");
+        }
+
+        userAuthenticators = authenticators.append("]").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] serializeTrackAttributes() {
+        return codec.toBytes(trackAttributes);
+    }
+
+    @Benchmark
+    public TrackResponse deserializeTrackResponse() {
+        return codec.fromBytes(trackResponse, TrackResponse.class);
+    }
+
+    @Benchmark
+    public GetUserResponse deserializeGetUserResponse() {
+        return codec.fromBytes(getUserResponse, GetUserResponse.class);
+    }
+
+    @Benchmark
+    public UserAuthenticator[] deserializeUserAuthenticators() {
+        return codec.fromBytes(userAuthenticators, UserAuthenticator[].class);
+    }
+}
@@ -0,0 +1,74 @@
+package com.authsignal;
+
+import com.authsignal.model.TrackRequest;
+import com.authsignal.model.TrackResponse;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the HTTP/1.1 and HTTP/2 transports with 1000 threads each keeping one track() call
+ * in flight. Sample time mode reports the latency percentiles, including p99.
+ *
+ * The in-process stub serves both HTTP/1.1 and cleartext HTTP/2, and both modes are capped at the
+ * same number of requests in flight, so the difference is the protocol. Pass
+ * {@code -p baseURL=...} to run both modes against another endpoint instead.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@Threads(1000)
+@State(Scope.Benchmark)
+public class TransportBenchmark {
+    @Param({ "false", "true" })
+    public boolean http2;
+
+    @Param({ "" })
+    public String baseURL;
+
+    @Param({ "200" })
+    public int maxInFlight;
+
+    private H2cBenchmarkServer server;
+    private AuthsignalClient client;
+    private TrackRequest request;
+
+    @Setup
+    public void setup() throws Exception {
+        String url = baseURL;
+
+        if (url.isEmpty()) {
+            server = new H2cBenchmarkServer("{\"idempotencyKey\":\"key\",\"state\":\"ALLOW\",\"ruleIds\":[]}");
+            url = server.getBaseURL();
+        }
+
+        AuthsignalClientOptions options = new AuthsignalClientOptions();
+        options.http2 = http2;
+        options.maxConnections = maxInFlight;
+        options.maxConcurrentStreams = maxInFlight;
+        options.retries = 0;
+
+        client = new AuthsignalClient("secret", url, options);
+
+        request = new TrackRequest();
+        request.userId = "user";
+        request.action = "signIn";
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Benchmark
+    public TrackResponse track() {
+        return client.track(request).join();
+    }
+}
@@ -0,0 +1,59 @@
+package com.authsignal;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Measures how batch webhook verification scales with the number of threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WebhookBatchBenchmark {
+    private static final String SECRET = "benchmark-secret";
+    private static final int BATCH_SIZE = 10000;
+
+    @Param({ "1", "2", "4", "8" })
+    public int parallelism;
+
+    private Webhook webhook;
+    private List<WebhookPayload> payloads;
+
+    @Setup
+    public void setup() throws Exception {
+        webhook = new Webhook(SECRET);
+        payloads = new ArrayList<>(BATCH_SIZE);
+
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+
+        long timestamp = System.currentTimeMillis() / 1000;
+
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            String payload = "{\"version\":1,\"id\":\"" + i + "\",\"source\":\"https://authsignal.com\","
+                    + "\"tenantId\":\"7752d28e-e627-4b1b-bb81-b45d68d617bc\",\"type\":\"email.created\","
+                    + "\"data\":{\"to\":\"user-" + i + "@example.com\",\"code\":\"157743\"}}";
+
+            byte[] digest = mac.doFinal((timestamp + "." + payload).getBytes(StandardCharsets.UTF_8));
+            String signature = "t=" + timestamp + ",v2=" + Base64.getEncoder().withoutPadding().encodeToString(digest);
+
+            payloads.add(new WebhookPayload(payload, signature));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<WebhookResult> constructEvents() {
+        return webhook.constructEvents(payloads, -1, parallelism);
+    }
+}
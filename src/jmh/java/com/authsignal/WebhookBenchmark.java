@@ -0,0 +1,63 @@
+package com.authsignal;
+
+import com.authsignal.model.WebhookEvent;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Measures verifying and decoding webhook events of increasing payload size.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WebhookBenchmark {
+    private static final String SECRET = "benchmark-secret";
+
+    @Param({ "256", "4096", "65536" })
+    public int payloadSize;
+
+    private Webhook webhook;
+    private String payload;
+    private String signature;
+
+    @Setup
+    public void setup() throws Exception {
+        webhook = new Webhook(SECRET);
+
+        StringBuilder data = new StringBuilder();
+        int entry = 0;
+
+        while (data.length() < payloadSize) {
+            data.append(entry > 0 ? "," : "").append("\"key").append(entry).append("\":\"value").append(entry)
+                    .append("\"");
+            entry++;
+        }
+
+        payload = "{\"version\":1,\"id\":\"bc1598bc-e5d6-4c69-9afb-1a6fe3469d6e\","
+                + "\"source\":\"https://authsignal.com\",\"time\":\"2025-02-20T01:51:56.070Z\","
+                + "\"tenantId\":\"7752d28e-e627-4b1b-bb81-b45d68d617bc\",\"type\":\"email.created\","
+                + "\"data\":{" + data + "}}";
+
+        long timestamp = System.currentTimeMillis() / 1000;
+
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        byte[] digest = mac.doFinal((timestamp + "." + payload).getBytes(StandardCharsets.UTF_8));
+
+        signature = "t=" + timestamp + ",v2=" + Base64.getEncoder().withoutPadding().encodeToString(digest);
+    }
+
+    @Benchmark
+    public WebhookEvent constructEvent() throws Webhook.InvalidSignatureException {
+        return webhook.constructEvent(payload, signature, -1);
+    }
+}
@@ -0,0 +1,36 @@
+package com.authsignal;
+
+import java.time.Duration;
+
+/**
+ * Optional settings for {@link AuthenticatorImporter}. Fields left unset keep their defaults.
+ */
+public class AuthenticatorImportOptions {
+    /**
+     * The number of enrollments kept in flight when the import starts. The limit then grows by one
+     * for each limit's worth of successes and halves when the API is rate limiting or failing.
+     */
+    public int initialConcurrency = 4;
+
+    /**
+     * The highest number of enrollments the import keeps in flight.
+     */
+    public int maxConcurrency = 64;
+
+    /**
+     * The number of attempts made for a record that is rate limited, or answered with 503 and a
+     * {@code Retry-After} header, before it is logged as failed. Records that fail in other ways
+     * are not sent again, as they may already have been enrolled.
+     */
+    public int maxAttempts = 5;
+
+    /**
+     * The delay before the first retry of a record. Each further retry waits twice as long.
+     */
+    public Duration retryDelay = Duration.ofSeconds(1);
+
+    /**
+     * The number of records that complete between saves of the committed offset.
+     */
+    public int commitInterval = 100;
+}
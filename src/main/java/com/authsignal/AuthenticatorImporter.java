@@ -0,0 +1,411 @@
+package com.authsignal;
+
+import com.authsignal.exception.AuthsignalException;
+import com.authsignal.json.JsonCodec;
+import com.authsignal.model.AuthenticatorImportResult;
+import com.authsignal.model.EnrollVerifiedAuthenticatorRequest;
+import com.authsignal.model.EnrollVerifiedAuthenticatorResponse;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Enrolls verified authenticators in bulk, for example when migrating from another MFA store.
+ *
+ * The number of enrollments in flight adapts to the API: it grows by one after each limit's worth
+ * of successes and halves, at most once per limit's worth of completions, when a request is rate
+ * limited, fails with a server error or times out.
+ *
+ * Enrolling is not idempotent, so a record is only sent again when the API says it was not
+ * processed: when it is rate limited (429), or unavailable (503) with a {@code Retry-After}
+ * header. It is then retried with exponential backoff, waiting at least as long as the API asked.
+ * Records that fail in any other way, including other server errors and timeouts, may have been
+ * enrolled and are logged as failed for review rather than sent twice.
+ *
+ * Every record's outcome is appended to a result log as one JSON line. Records are numbered by
+ * their position in the input, and the offset below which every record has completed is saved
+ * beside the log. Running the import again with the same input and log skips the records before
+ * that offset. Records after it that completed before an interruption are enrolled again, so
+ * their results may appear twice in the log.
+ */
+public class AuthenticatorImporter {
+    public static final String ENROLLED = "ENROLLED";
+    public static final String REJECTED = "REJECTED";
+    public static final String FAILED = "FAILED";
+
+    private static final int MAX_BACKOFF_SHIFT = 10;
+
+    private final AuthsignalClient client;
+    private final JsonCodec codec;
+    private final Path resultLog;
+    private final Path offsetFile;
+    private final AuthenticatorImportOptions options;
+    private final RequestLimiter limiter;
+
+    // Guarded by this
+    private int limit;
+    private int successesSinceIncrease;
+    private int completionsSinceDecrease;
+
+    // Guarded by commitLock
+    private final Object commitLock = new Object();
+    private final TreeSet<Long> completedAhead = new TreeSet<>();
+    private BufferedWriter log;
+    private long committedOffset;
+    private long savedOffset;
+    private volatile IOException logFailure;
+
+    private final LongAdder enrolled = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+
+    public AuthenticatorImporter(AuthsignalClient client, Path resultLog) {
+        this(client, resultLog, new AuthenticatorImportOptions());
+    }
+
+    public AuthenticatorImporter(AuthsignalClient client, Path resultLog, AuthenticatorImportOptions options) {
+        this.client = client;
+        this.codec = client.getCodec();
+        this.resultLog = resultLog;
+        this.offsetFile = resultLog.resolveSibling(resultLog.getFileName() + ".offset");
+        this.options = options;
+        this.limit = Math.max(1, Math.min(options.initialConcurrency, options.maxConcurrency));
+        this.completionsSinceDecrease = limit;
+        this.limiter = new RequestLimiter(limit);
+    }
+
+    /**
+     * Imports the records of a file with one {@link EnrollVerifiedAuthenticatorRequest} as JSON on
+     * each line. Blank lines are skipped. Lines that are not a valid record are logged as rejected
+     * and the import carries on with the next line.
+     */
+    public void run(Path records) throws IOException, InterruptedException {
+        try (Stream<String> lines = Files.lines(records, StandardCharsets.UTF_8)) {
+            run(lines.filter(line -> !line.trim().isEmpty()).iterator(),
+                    line -> codec.<EnrollVerifiedAuthenticatorRequest>fromJson(line,
+                            EnrollVerifiedAuthenticatorRequest.class));
+        }
+    }
+
+    /**
+     * Imports the records, resuming after the committed offset of an earlier run with the same
+     * result log. Blocks until every record has completed.
+     */
+    public void run(Iterator<EnrollVerifiedAuthenticatorRequest> records) throws IOException, InterruptedException {
+        run(records, Function.identity());
+    }
+
+    /**
+     * Parses each record only once it is known not to be before the committed offset, so that a
+     * malformed record is logged at its own offset instead of ending the import.
+     */
+    private <T> void run(Iterator<T> records, Function<T, EnrollVerifiedAuthenticatorRequest> parser)
+            throws IOException, InterruptedException {
+        long start = readCommittedOffset();
+        int window = Math.max(1, options.maxConcurrency) * 2;
+
+        // Bounds the records read ahead of their completion, including those waiting to retry
+        Semaphore outstanding = new Semaphore(window);
+
+        try (BufferedWriter writer = Files.newBufferedWriter(resultLog, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            synchronized (commitLock) {
+                log = writer;
+                committedOffset = start;
+                savedOffset = start;
+                completedAhead.clear();
+            }
+
+            try {
+                long offset = 0;
+
+                while (records.hasNext() && logFailure == null) {
+                    T input = records.next();
+                    long recordOffset = offset++;
+
+                    if (recordOffset < start) {
+                        continue;
+                    }
+
+                    EnrollVerifiedAuthenticatorRequest record;
+
+                    try {
+                        record = parser.apply(input);
+                    } catch (RuntimeException ex) {
+                        complete(recordOffset, null, malformed(ex.getMessage()));
+                        continue;
+                    }
+
+                    if (record == null) {
+                        complete(recordOffset, null, malformed("The record is empty."));
+                        continue;
+                    }
+
+                    outstanding.acquire();
+
+                    enroll(record, 1).whenComplete((result, ex) -> {
+                        complete(recordOffset, record, result);
+                        outstanding.release();
+                    });
+                }
+
+                outstanding.acquire(window);
+
+                synchronized (commitLock) {
+                    if (logFailure == null) {
+                        commit();
+                    }
+                }
+            } finally {
+                synchronized (commitLock) {
+                    log = null;
+                }
+            }
+        }
+
+        if (logFailure != null) {
+            throw logFailure;
+        }
+    }
+
+    /**
+     * Returns the number of records before which every record has completed, as last saved.
+     */
+    public long readCommittedOffset() throws IOException {
+        if (!Files.exists(offsetFile)) {
+            return 0;
+        }
+
+        String content = new String(Files.readAllBytes(offsetFile), StandardCharsets.UTF_8).trim();
+
+        try {
+            return Long.parseLong(content);
+        } catch (NumberFormatException ex) {
+            throw new IOException("The import offset " + offsetFile + " is malformed.", ex);
+        }
+    }
+
+    public long getEnrolledCount() {
+        return enrolled.sum();
+    }
+
+    /**
+     * Returns the number of records rejected by the API with a client error.
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Returns the number of records that were still failing after the last attempt.
+     */
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    /**
+     * Returns the current limit on enrollments in flight.
+     */
+    public synchronized int getConcurrencyLimit() {
+        return limit;
+    }
+
+    private CompletableFuture<AuthenticatorImportResult> enroll(EnrollVerifiedAuthenticatorRequest record,
+            int attempt) {
+        return limiter.submit(() -> client.enrollVerifiedAuthenticator(record))
+                .handle((response, ex) -> new Outcome(response, ex))
+                .thenCompose(outcome -> {
+                    Throwable cause = outcome.cause();
+
+                    if (cause == null) {
+                        increase();
+                    } else if (isOverload(cause)) {
+                        decrease();
+                    }
+
+                    if (cause == null || !isRetryable(cause) || attempt >= options.maxAttempts) {
+                        return CompletableFuture.completedFuture(result(record, outcome.response, cause));
+                    }
+
+                    retries.increment();
+
+                    Duration retryAfter = ((AuthsignalException) cause).getRetryAfter();
+                    long delay = options.retryDelay.toMillis() << Math.min(attempt - 1, MAX_BACKOFF_SHIFT);
+
+                    if (retryAfter != null) {
+                        delay = Math.max(delay, retryAfter.toMillis());
+                    }
+
+                    return CompletableFuture.supplyAsync(() -> null,
+                            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                            .thenCompose(ignored -> enroll(record, attempt + 1));
+                });
+    }
+
+    private AuthenticatorImportResult result(EnrollVerifiedAuthenticatorRequest record,
+            EnrollVerifiedAuthenticatorResponse response, Throwable cause) {
+        AuthenticatorImportResult result = new AuthenticatorImportResult();
+        result.userId = record.userId;
+
+        if (cause == null) {
+            result.status = ENROLLED;
+            result.userAuthenticatorId = response != null && response.authenticator != null
+                    ? response.authenticator.userAuthenticatorId
+                    : null;
+            enrolled.increment();
+        } else if (cause instanceof AuthsignalException && !isOverload(cause)) {
+            result.status = REJECTED;
+            result.statusCode = ((AuthsignalException) cause).getStatusCode();
+            result.error = cause.getMessage();
+            rejected.increment();
+        } else {
+            result.status = FAILED;
+            result.statusCode = cause instanceof AuthsignalException
+                    ? ((AuthsignalException) cause).getStatusCode()
+                    : null;
+            result.error = cause.getMessage();
+            failed.increment();
+        }
+
+        return result;
+    }
+
+    private AuthenticatorImportResult malformed(String error) {
+        AuthenticatorImportResult result = new AuthenticatorImportResult();
+        result.status = REJECTED;
+        result.error = "The record is malformed: " + error;
+        rejected.increment();
+        return result;
+    }
+
+    private void complete(long offset, EnrollVerifiedAuthenticatorRequest record, AuthenticatorImportResult result) {
+        if (result == null) {
+            result = result(record, null, new IllegalStateException("The enrollment did not complete."));
+        }
+
+        result.offset = offset;
+
+        synchronized (commitLock) {
+            if (log == null || logFailure != null) {
+                return;
+            }
+
+            try {
+                log.write(codec.toJson(result));
+                log.newLine();
+
+                completedAhead.add(offset);
+
+                while (completedAhead.remove(committedOffset)) {
+                    committedOffset++;
+                }
+
+                if (committedOffset - savedOffset >= options.commitInterval) {
+                    commit();
+                }
+            } catch (IOException ex) {
+                logFailure = ex;
+            }
+        }
+    }
+
+    /**
+     * Flushes the result log and then saves the committed offset, replacing the previous one in
+     * one step. Called with commitLock held.
+     */
+    private void commit() throws IOException {
+        log.flush();
+
+        Path temp = offsetFile.resolveSibling(offsetFile.getFileName() + ".tmp");
+
+        Files.write(temp, Long.toString(committedOffset).getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, offsetFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        savedOffset = committedOffset;
+    }
+
+    private synchronized void increase() {
+        completionsSinceDecrease++;
+
+        if (++successesSinceIncrease >= limit && limit < options.maxConcurrency) {
+            limit++;
+            successesSinceIncrease = 0;
+            limiter.setLimit(limit);
+        }
+    }
+
+    private synchronized void decrease() {
+        // Requests already in flight at the last decrease may still fail; only react to new ones
+        if (++completionsSinceDecrease <= limit) {
+            return;
+        }
+
+        limit = Math.max(1, limit / 2);
+        successesSinceIncrease = 0;
+        completionsSinceDecrease = 0;
+        limiter.setLimit(limit);
+    }
+
+    /**
+     * Returns whether the failure is a sign that the API is overloaded, so that fewer enrollments
+     * should be kept in flight. Other failures, such as a response that could not be decoded, say
+     * nothing about the API's load.
+     */
+    private static boolean isOverload(Throwable cause) {
+        if (!(cause instanceof AuthsignalException)) {
+            return cause instanceof HttpTimeoutException;
+        }
+
+        int statusCode = ((AuthsignalException) cause).getStatusCode();
+        return statusCode == 429 || statusCode >= 500;
+    }
+
+    /**
+     * Returns whether the API said that the request was not processed, so that it is safe to send
+     * the enrollment again.
+     */
+    private static boolean isRetryable(Throwable cause) {
+        if (!(cause instanceof AuthsignalException)) {
+            return false;
+        }
+
+        AuthsignalException exception = (AuthsignalException) cause;
+        return exception.getStatusCode() == 429
+                || exception.getStatusCode() == 503 && exception.getRetryAfter() != null;
+    }
+
+    private static final class Outcome {
+        final EnrollVerifiedAuthenticatorResponse response;
+        final Throwable error;
+
+        Outcome(EnrollVerifiedAuthenticatorResponse response, Throwable error) {
+            this.response = response;
+            this.error = error;
+        }
+
+        Throwable cause() {
+            return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        }
+    }
+}
@@ -1,42 +1,147 @@
 package com.authsignal;
 
 import com.authsignal.exception.*;
+import com.authsignal.json.JsonCodec;
 import com.authsignal.model.*;
-import com.google.gson.Gson;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLEncoder;
 import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CompletableFuture;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-public class AuthsignalClient {
+public class AuthsignalClient implements AutoCloseable {
     private String _secret;
     private String _baseURL;
     private int retries;
 
+    private final JsonCodec codec;
+    private final HttpClient httpClient;
+    private final Executor decodeExecutor;
+    private final ExecutorService ownedDecodeExecutor;
+    private final RequestLimiter limiter;
+    private final SegmentedLruCache<String, GetUserResponse> userCache;
+    private final SingleFlight<String, Object> requestCoalescer;
+    private final SessionTokenVerifier sessionVerifier;
+    private final SessionRevocationFilter revocationFilter;
+    private final SegmentedLruCache<String, ValidateSessionResponse> sessionCache;
+    private final Duration sessionCacheTtl;
+    private final SingleFlight<String, RefreshSessionResponse> refreshCoalescer = new SingleFlight<>();
+    private final SegmentedLruCache<String, RefreshSessionResponse> refreshResults;
+    private volatile boolean closed;
+
     private static final String DEFAULT_API_URL = "https://api.authsignal.com/v1";
     private static final int DEFAULT_RETRIES = 2;
     private static final String VERSION = "2.10.1";
+    private static final long SESSION_CACHE_EXPIRY_MARGIN_MILLIS = 30_000;
+    private static final int MAX_RETAINED_REFRESHES = 10_000;
+    private static final int DEFAULT_PREFETCH_PAGES = 2;
 
     public Webhook webhook;
 
-    public AuthsignalClient(String secret, String baseURL, int retries) {
+    public AuthsignalClient(String secret, String baseURL, AuthsignalClientOptions options) {
         this._secret = secret;
         this._baseURL = baseURL;
-        this.retries = retries;
+        this.retries = options.retries;
+        this.codec = options.jsonCodec != null ? options.jsonCodec : JsonCodec.getDefault();
+
+        this.httpClient = buildHttpClient(options);
+        this.ownedDecodeExecutor = options.decodeExecutor == null
+                ? Executors.newCachedThreadPool(runnable -> {
+                    Thread thread = new Thread(runnable, "authsignal-decode");
+                    thread.setDaemon(true);
+                    return thread;
+                })
+                : null;
+        this.decodeExecutor = options.decodeExecutor != null ? options.decodeExecutor : ownedDecodeExecutor;
+        this.limiter = new RequestLimiter(options.http2 ? options.maxConcurrentStreams : options.maxConnections);
+
+        this.userCache = options.userCacheTtl != null
+                ? new SegmentedLruCache<String, GetUserResponse>(options.userCacheMaxSize, options.userCacheTtl)
+                : null;
+
+        this.requestCoalescer = options.coalesceGets ? new SingleFlight<String, Object>() : null;
+
+        if (options.sessionKeysURL != null && options.sessionIssuer == null) {
+            throw new IllegalArgumentException("sessionIssuer must be set when sessionKeysURL is set");
+        }
+
+        this.sessionVerifier = options.sessionKeysURL != null
+                ? new SessionTokenVerifier(codec, () -> fetchSessionKeys(options.sessionKeysURL),
+                        options.sessionKeysRefreshInterval, options.sessionIssuer, options.sessionTokenScope,
+                        options.sessionClockSkew)
+                : null;
+
+        // Sessions that are accepted without asking the API must still honor revocations
+        this.revocationFilter = sessionVerifier != null
+                ? new SessionRevocationFilter(options.sessionRevocationCapacity, 0.01, options.maxSessionLifetime)
+                : null;
+
+        this.sessionCache = options.sessionCacheMaxSize > 0
+                ? new SegmentedLruCache<String, ValidateSessionResponse>(options.sessionCacheMaxSize,
+                        options.sessionCacheTtl)
+                : null;
+        this.sessionCacheTtl = options.sessionCacheTtl;
+
+        this.refreshResults = options.sessionRefreshRetention != null && !options.sessionRefreshRetention.isZero()
+                ? new SegmentedLruCache<String, RefreshSessionResponse>(MAX_RETAINED_REFRESHES,
+                        options.sessionRefreshRetention)
+                : null;
+
+        this.webhook = new Webhook(secret, codec);
+
+        if (userCache != null) {
+            webhook.addListener(this::invalidateCachedUser);
+        }
 
-        this.webhook = new Webhook(secret);
+        if ((revocationFilter != null || sessionCache != null) && options.sessionRevocationEventTypes.length > 0) {
+            List<String> revocationEventTypes = Arrays.asList(options.sessionRevocationEventTypes);
+
+            webhook.addListener(event -> {
+                if (revocationEventTypes.contains(event.type) && event.data != null) {
+                    recordRevocation(event.data.get("accessToken"), event.data.get("userId"));
+                }
+            });
+        }
+    }
+
+    public AuthsignalClient(String secret, AuthsignalClientOptions options) {
+        this(secret, DEFAULT_API_URL, options);
+    }
+
+    public AuthsignalClient(String secret, String baseURL, int retries) {
+        this(secret, baseURL, optionsWithRetries(retries));
     }
 
     public AuthsignalClient(String secret, String baseURL) {
@@ -51,11 +156,29 @@ public class AuthsignalClient {
         this(secret, DEFAULT_API_URL, DEFAULT_RETRIES);
     }
 
+    /**
+     * Gets a user. When {@link AuthsignalClientOptions#userCacheTtl} is set, the response may be
+     * served from the client's cache and is shared with other callers, so it should not be modified.
+     */
     public CompletableFuture<GetUserResponse> getUser(GetUserRequest request) {
         String path = String.format("/users/%s", request.userId);
 
-        return getRequest(path).thenApply(
-                response -> new Gson().fromJson(response.body(), GetUserResponse.class));
+        if (userCache == null) {
+            return getRequest(path, GetUserResponse.class);
+        }
+
+        GetUserResponse cached = userCache.get(request.userId);
+
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        long version = userCache.version();
+
+        return getRequest(path, GetUserResponse.class).thenApply(response -> {
+            userCache.put(request.userId, response, version);
+            return response;
+        });
     }
 
     public CompletableFuture<QueryUsersResponse> queryUsers(QueryUsersRequest request) {
@@ -89,42 +212,71 @@ public class AuthsignalClient {
 
         String path = "/users" + (query.isEmpty() ? "" : "?" + query);
 
-        return getRequest(path)
-                .thenApply(response -> new Gson().fromJson(response.body(), QueryUsersResponse.class));
+        return getRequest(path, QueryUsersResponse.class);
+    }
+
+    public Stream<QueryUsersResponseUser> streamUsers(QueryUsersRequest request) {
+        return streamUsers(request, DEFAULT_PREFETCH_PAGES);
+    }
+
+    /**
+     * Returns every user matching the query as a lazy stream, following pages as it is consumed.
+     * The next {@code prefetchPages} pages are fetched in the background while the current one is
+     * read, and no more than that are held in memory. Close the stream to stop fetching when it is
+     * not read to the end. A failed request is thrown as a {@link CompletionException}.
+     */
+    public Stream<QueryUsersResponseUser> streamUsers(QueryUsersRequest request, int prefetchPages) {
+        UserPageIterator pages = new UserPageIterator(this, request, prefetchPages);
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(pages,
+                Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(pages::close)
+                .flatMap(page -> page.users != null ? Arrays.stream(page.users) : Stream.empty());
+    }
+
+    /**
+     * Returns a publisher of every user matching the query. Pages are only fetched as subscribers
+     * request more users, so a slow subscriber is never sent more than it asked for.
+     */
+    public Flow.Publisher<QueryUsersResponseUser> publishUsers(QueryUsersRequest request) {
+        return new PagedPublisher<>(cursor -> queryUsers(cursor != null
+                ? UserPageIterator.pageAfter(request, cursor)
+                : request).thenApply(response -> new PagedPublisher.Page<>(
+                        response.users != null ? Arrays.asList(response.users) : null,
+                        UserPageIterator.isLastPage(response) ? null : response.lastEvaluatedUserId)));
     }
 
     public CompletableFuture<UserAttributes> updateUser(UpdateUserRequest request) {
         String path = String.format("/users/%s", request.userId);
 
-        return postRequest(path, new Gson().toJson(request.attributes))
-                .thenApply(response -> new Gson().fromJson(response.body(), UserAttributes.class));
+        return invalidatingUser(request.userId,
+                postRequest(path, codec.toBytes(request.attributes), UserAttributes.class));
     }
 
     public CompletableFuture<Void> deleteUser(DeleteUserRequest request) {
         String path = String.format("/users/%s", request.userId);
 
-        return deleteRequest(path).thenApply(response -> null);
+        return invalidatingUser(request.userId, deleteRequest(path));
     }
 
     public CompletableFuture<UserAuthenticator[]> getAuthenticators(GetAuthenticatorsRequest request) {
         String path = String.format("/users/%s/authenticators", request.userId);
 
-        return getRequest(path)
-                .thenApply(response -> new Gson().fromJson(response.body(), UserAuthenticator[].class));
+        return getRequest(path, UserAuthenticator[].class);
     }
 
     public CompletableFuture<EnrollVerifiedAuthenticatorResponse> enrollVerifiedAuthenticator(
             EnrollVerifiedAuthenticatorRequest request) {
         String path = String.format("/users/%s/authenticators", request.userId);
 
-        return postRequest(path, new Gson().toJson(request.attributes))
-                .thenApply(response -> new Gson().fromJson(response.body(), EnrollVerifiedAuthenticatorResponse.class));
+        return invalidatingUser(request.userId,
+                postRequest(path, codec.toBytes(request.attributes), EnrollVerifiedAuthenticatorResponse.class));
     }
 
     public CompletableFuture<Void> deleteAuthenticator(DeleteAuthenticatorRequest request) {
         String path = String.format("/users/%s/authenticators/%s", request.userId, request.userAuthenticatorId);
 
-        return deleteRequest(path).thenApply(response -> null);
+        return invalidatingUser(request.userId, deleteRequest(path));
     }
 
     public CompletableFuture<TrackResponse> track(TrackRequest request) {
@@ -132,19 +284,17 @@ public class AuthsignalClient {
 
         TrackAttributes attributes = request.attributes != null ? request.attributes : new TrackAttributes();
 
-        return postRequest(path, new Gson().toJson(attributes))
-                .thenApply(response -> new Gson().fromJson(response.body(), TrackResponse.class));
+        return postRequest(path, codec.toBytes(attributes), TrackResponse.class);
     }
 
     public CompletableFuture<ValidateChallengeResponse> validateChallenge(ValidateChallengeRequest request) {
-        return postRequest("/validate", new Gson().toJson(request))
-                .thenApply(response -> new Gson().fromJson(response.body(), ValidateChallengeResponse.class));
+        return postRequest("/validate", codec.toBytes(request), ValidateChallengeResponse.class);
     }
 
     public CompletableFuture<GetActionResponse> getAction(GetActionRequest request) {
         String path = String.format("/users/%s/actions/%s/%s", request.userId, request.action, request.idempotencyKey);
 
-        return getRequest(path).thenApply(response -> new Gson().fromJson(response.body(), GetActionResponse.class));
+        return getRequest(path, GetActionResponse.class);
     }
 
     public CompletableFuture<QueryUserActionsResponseItem[]> queryUserActions(QueryUserActionsRequest request) {
@@ -166,30 +316,39 @@ public class AuthsignalClient {
 
         String path = String.format("/users/%s/actions", request.userId) + (query.isEmpty() ? "" : "?" + query);
 
-        return getRequest(path)
-                .thenApply(response -> new Gson().fromJson(response.body(), QueryUserActionsResponseItem[].class));
+        return getRequest(path, QueryUserActionsResponseItem[].class);
+    }
+
+    /**
+     * Returns a publisher of the user's actions matching the query, for callers that consume
+     * results as a {@link Flow.Publisher}.
+     *
+     * The actions endpoint is not paginated, so this is only an adapter over
+     * {@link #queryUserActions(QueryUserActionsRequest)}: the first request from a subscriber makes
+     * one call that decodes every matching action, which are then emitted as they are requested.
+     * It does not reduce the memory or latency of the query itself.
+     */
+    public Flow.Publisher<QueryUserActionsResponseItem> publishUserActions(QueryUserActionsRequest request) {
+        return new PagedPublisher<>(cursor -> queryUserActions(request).thenApply(
+                items -> new PagedPublisher.Page<>(items != null ? Arrays.asList(items) : null, null)));
     }
 
     public CompletableFuture<ActionAttributes> updateAction(UpdateActionRequest request) {
         String path = String.format("/users/%s/actions/%s/%s", request.userId, request.action, request.idempotencyKey);
 
-        return patchRequest(path, new Gson().toJson(request.attributes))
-                .thenApply(response -> new Gson().fromJson(response.body(), ActionAttributes.class));
+        return patchRequest(path, codec.toBytes(request.attributes), ActionAttributes.class);
     }
 
     public CompletableFuture<ChallengeResponse> challenge(ChallengeRequest request) {
-        return postRequest("/challenge", new Gson().toJson(request))
-                .thenApply(response -> new Gson().fromJson(response.body(), ChallengeResponse.class));
+        return postRequest("/challenge", codec.toBytes(request), ChallengeResponse.class);
     }
 
     public CompletableFuture<VerifyResponse> verify(VerifyRequest request) {
-        return postRequest("/verify", new Gson().toJson(request))
-                .thenApply(response -> new Gson().fromJson(response.body(), VerifyResponse.class));
+        return postRequest("/verify", codec.toBytes(request), VerifyResponse.class);
     }
 
     public CompletableFuture<ClaimChallengeResponse> claimChallenge(ClaimChallengeRequest request) {
-        return postRequest("/claim", new Gson().toJson(request))
-                .thenApply(response -> new Gson().fromJson(response.body(), ClaimChallengeResponse.class));
+        return postRequest("/claim", codec.toBytes(request), ClaimChallengeResponse.class);
     }
 
     public CompletableFuture<GetChallengeResponse> getChallenge(GetChallengeRequest request) {
@@ -215,160 +374,516 @@ public class AuthsignalClient {
 
         String path = "/challenges" + query;
 
-        return postRequest(path, new Gson().toJson(request))
-                .thenApply(response -> new Gson().fromJson(response.body(), GetChallengeResponse.class));
+        return postRequest(path, codec.toBytes(request), GetChallengeResponse.class);
     }
 
     public CompletableFuture<CreateSessionResponse> createSession(CreateSessionRequest request) {
-        return postRequest("/sessions", new Gson().toJson(request))
-                .thenApply(response -> new Gson().fromJson(response.body(), CreateSessionResponse.class));
+        return postRequest("/sessions", codec.toBytes(request), CreateSessionResponse.class);
     }
 
+    /**
+     * Validates a session access token. When {@link AuthsignalClientOptions#sessionKeysURL} is set,
+     * tokens signed with a known key are validated locally and only tokens signed with an unknown
+     * key are sent to the API. When {@link AuthsignalClientOptions#sessionCacheMaxSize} is set,
+     * results are cached and shared with other callers, so they should not be modified.
+     */
     public CompletableFuture<ValidateSessionResponse> validateSession(ValidateSessionRequest request) {
-        return postRequest("/sessions/validate", new Gson().toJson(request))
-                .thenApply(response -> new Gson().fromJson(response.body(), ValidateSessionResponse.class));
+        if (sessionCache == null || request.accessToken == null) {
+            return validateSessionUncached(request);
+        }
+
+        String key = sessionCacheKey(request);
+        ValidateSessionResponse cached = sessionCache.get(key);
+
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        long version = sessionCache.version();
+
+        return validateSessionUncached(request).thenApply(response -> {
+            // Stop serving the result shortly before the session expires
+            long untilExpiry = response.expiresAt * 1000L - SESSION_CACHE_EXPIRY_MARGIN_MILLIS
+                    - System.currentTimeMillis();
+            long ttl = Math.min(sessionCacheTtl.toMillis(), untilExpiry);
+
+            if (ttl > 0) {
+                String userId = response.user != null ? response.user.userId : null;
+
+                // Tagged so that a revocation removes its sessions without scanning the cache, and
+                // only drops the validations in flight for the same token or user
+                sessionCache.put(key, response, version, Duration.ofMillis(ttl),
+                        userId != null
+                                ? new Object[] { tokenTag(request.accessToken), userTag(userId) }
+                                : new Object[] { tokenTag(request.accessToken) });
+            }
+
+            return response;
+        });
+    }
+
+    private CompletableFuture<ValidateSessionResponse> validateSessionUncached(ValidateSessionRequest request) {
+        if (sessionVerifier == null) {
+            return validateSessionRemotely(request);
+        }
+
+        // A possible revocation is confirmed with the API rather than trusted or ignored
+        return sessionVerifier.validate(request).thenCompose(response -> response != null
+                && !revocationFilter.mightBeRevoked(request.accessToken, response.user.userId)
+                        ? CompletableFuture.completedFuture(response)
+                        : validateSessionRemotely(request));
     }
 
+    private CompletableFuture<ValidateSessionResponse> validateSessionRemotely(ValidateSessionRequest request) {
+        return postRequest("/sessions/validate", codec.toBytes(request), ValidateSessionResponse.class);
+    }
+
+    /**
+     * Refreshes a session. Concurrent refreshes with the same refresh token share one request.
+     * When {@link AuthsignalClientOptions#sessionRefreshRetention} is set, its response is also
+     * kept for that long so that callers arriving just after it completes get the same tokens.
+     */
     public CompletableFuture<RefreshSessionResponse> refreshSession(RefreshSessionRequest request) {
-        return postRequest("/sessions/refresh", new Gson().toJson(request))
-                .thenApply(response -> new Gson().fromJson(response.body(), RefreshSessionResponse.class));
+        if (request.refreshToken == null) {
+            return postRequest("/sessions/refresh", codec.toBytes(request), RefreshSessionResponse.class);
+        }
+
+        String key = hashToken(request.refreshToken);
+
+        if (refreshResults != null) {
+            RefreshSessionResponse retained = refreshResults.get(key);
+
+            if (retained != null) {
+                return CompletableFuture.completedFuture(retained);
+            }
+        }
+
+        // Retain the response before the request leaves the coalescer, so no caller falls between them
+        return refreshCoalescer.execute(key, () -> postRequest("/sessions/refresh", codec.toBytes(request),
+                RefreshSessionResponse.class).thenApply(response -> {
+                    if (refreshResults != null) {
+                        refreshResults.put(key, response);
+                    }
+
+                    return response;
+                }));
     }
 
     public CompletableFuture<Void> revokeSession(RevokeSessionRequest request) {
-        return postRequest("/sessions/revoke", new Gson().toJson(request))
-                .thenApply(response -> null);
+        recordRevocation(request.accessToken, null);
+
+        return postRequest("/sessions/revoke", codec.toBytes(request), Void.class);
     }
 
     public CompletableFuture<Void> revokeUserSessions(RevokeUserSessionsRequest request) {
-        return postRequest("/sessions/user/revoke", new Gson().toJson(request))
-                .thenApply(response -> null);
+        recordRevocation(null, request.userId);
+
+        return postRequest("/sessions/user/revoke", codec.toBytes(request), Void.class);
+    }
+
+    /**
+     * Makes a revocation take effect for locally validated and cached sessions straight away,
+     * before the API has confirmed it.
+     */
+    private void recordRevocation(String accessToken, String userId) {
+        if (accessToken != null) {
+            if (revocationFilter != null) {
+                revocationFilter.revokeToken(accessToken, SessionTokenVerifier.readExpiry(codec, accessToken));
+            }
+
+            if (sessionCache != null) {
+                sessionCache.invalidateTagged(tokenTag(accessToken));
+            }
+        } else if (userId != null) {
+            if (revocationFilter != null) {
+                revocationFilter.revokeUser(userId);
+            }
+
+            if (sessionCache != null) {
+                sessionCache.invalidateTagged(userTag(userId));
+            }
+        }
     }
 
-    private CompletableFuture<HttpResponse<String>> getRequest(String path) {
+    /**
+     * Keys cached sessions by a hash of the token, so raw tokens are never kept, and by the
+     * client ids the token was checked against.
+     */
+    private static String sessionCacheKey(ValidateSessionRequest request) {
+        String key = hashToken(request.accessToken);
+
+        if (request.clientIds != null && request.clientIds.length > 0) {
+            String[] clientIds = request.clientIds.clone();
+            Arrays.sort(clientIds);
+            key += ":" + String.join(",", clientIds);
+        }
+
+        return key;
+    }
+
+    private static String tokenTag(String accessToken) {
+        return "token:" + hashToken(accessToken);
+    }
+
+    private static String userTag(String userId) {
+        return "user:" + userId;
+    }
+
+    private static String hashToken(String accessToken) {
         try {
-            URI uri = new URI(_baseURL + path);
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(uri)
-                    .header("Authorization", getBasicAuthHeader())
-                    .header("X-Authsignal-Version", VERSION)
-                    .header("User-Agent", "authsignal-java")
-                    .GET()
-                    .build();
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(accessToken.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> getRequest(String path, Class<T> responseType) {
+        if (requestCoalescer != null) {
+            // A path always maps to the same response type, so the shared result can be cast back
+            return (CompletableFuture<T>) requestCoalescer.execute(path,
+                    () -> (CompletableFuture<Object>) sendGetRequest(path, responseType));
+        }
 
-            return sendHttpRequest(request);
+        return sendGetRequest(path, responseType);
+    }
+
+    private <T> CompletableFuture<T> sendGetRequest(String path, Class<T> responseType) {
+        try {
+            return sendHttpRequest(buildGetRequest(path), responseType);
         } catch (URISyntaxException ex) {
-            CompletableFuture<HttpResponse<String>> future = new CompletableFuture<>();
+            CompletableFuture<T> future = new CompletableFuture<>();
             future.completeExceptionally(new InvalidURLFormatException());
             return future;
         }
     }
 
-    private CompletableFuture<HttpResponse<String>> postRequest(String path, String body) {
+    /**
+     * Fetches the session signing keys. The key set is public, so the API secret is not sent.
+     */
+    private CompletableFuture<JsonWebKeySet> fetchSessionKeys(String url) {
         try {
-            URI uri = new URI(_baseURL + path);
             HttpRequest request = HttpRequest.newBuilder()
-                    .uri(uri)
-                    .header("Authorization", getBasicAuthHeader())
-                    .header("Content-Type", "application/json")
-                    .header("X-Authsignal-Version", VERSION)
-                    .POST(HttpRequest.BodyPublishers.ofString(body))
+                    .uri(new URI(url))
+                    .header("User-Agent", "authsignal-java")
+                    .GET()
                     .build();
 
-            return sendHttpRequest(request);
+            return sendHttpRequest(request, JsonWebKeySet.class);
         } catch (URISyntaxException ex) {
-            CompletableFuture<HttpResponse<String>> future = new CompletableFuture<>();
+            CompletableFuture<JsonWebKeySet> future = new CompletableFuture<>();
             future.completeExceptionally(new InvalidURLFormatException());
             return future;
         }
     }
 
-    private CompletableFuture<HttpResponse<String>> patchRequest(String path, String body) {
+    private <T> CompletableFuture<T> postRequest(String path, byte[] body, Class<T> responseType) {
         try {
-            URI uri = new URI(_baseURL + path);
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(uri)
-                    .header("Authorization", getBasicAuthHeader())
-                    .header("Content-Type", "application/json")
-                    .header("X-Authsignal-Version", VERSION)
-                    .method("PATCH", HttpRequest.BodyPublishers.ofString(body))
-                    .build();
-
-            return sendHttpRequest(request);
+            return sendHttpRequest(buildPostRequest(path, body), responseType);
         } catch (URISyntaxException ex) {
-            CompletableFuture<HttpResponse<String>> future = new CompletableFuture<>();
+            CompletableFuture<T> future = new CompletableFuture<>();
             future.completeExceptionally(new InvalidURLFormatException());
             return future;
         }
     }
 
-    private CompletableFuture<HttpResponse<String>> deleteRequest(String path) {
+    private <T> CompletableFuture<T> patchRequest(String path, byte[] body, Class<T> responseType) {
         try {
-            URI uri = new URI(_baseURL + path);
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(uri)
-                    .header("Authorization", getBasicAuthHeader())
-                    .header("X-Authsignal-Version", VERSION)
-                    .DELETE()
-                    .build();
+            return sendHttpRequest(buildPatchRequest(path, body), responseType);
+        } catch (URISyntaxException ex) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(new InvalidURLFormatException());
+            return future;
+        }
+    }
 
-            return sendHttpRequest(request);
+    private CompletableFuture<Void> deleteRequest(String path) {
+        try {
+            return sendHttpRequest(buildDeleteRequest(path), Void.class);
         } catch (URISyntaxException ex) {
-            CompletableFuture<HttpResponse<String>> future = new CompletableFuture<>();
+            CompletableFuture<Void> future = new CompletableFuture<>();
             future.completeExceptionally(new InvalidURLFormatException());
             return future;
         }
     }
 
+    HttpRequest buildGetRequest(String path) throws URISyntaxException {
+        return HttpRequest.newBuilder()
+                .uri(new URI(_baseURL + path))
+                .header("Authorization", getBasicAuthHeader())
+                .header("X-Authsignal-Version", VERSION)
+                .header("User-Agent", "authsignal-java")
+                .GET()
+                .build();
+    }
+
+    HttpRequest buildPostRequest(String path, byte[] body) throws URISyntaxException {
+        return HttpRequest.newBuilder()
+                .uri(new URI(_baseURL + path))
+                .header("Authorization", getBasicAuthHeader())
+                .header("Content-Type", "application/json")
+                .header("X-Authsignal-Version", VERSION)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+    }
+
+    HttpRequest buildPatchRequest(String path, byte[] body) throws URISyntaxException {
+        return HttpRequest.newBuilder()
+                .uri(new URI(_baseURL + path))
+                .header("Authorization", getBasicAuthHeader())
+                .header("Content-Type", "application/json")
+                .header("X-Authsignal-Version", VERSION)
+                .method("PATCH", HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+    }
+
+    HttpRequest buildDeleteRequest(String path) throws URISyntaxException {
+        return HttpRequest.newBuilder()
+                .uri(new URI(_baseURL + path))
+                .header("Authorization", getBasicAuthHeader())
+                .header("X-Authsignal-Version", VERSION)
+                .DELETE()
+                .build();
+    }
+
+    JsonCodec getCodec() {
+        return codec;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Returns the cache in front of {@link #getUser(GetUserRequest)}, or null if it is disabled.
+     */
+    public SegmentedLruCache<String, GetUserResponse> getUserCache() {
+        return userCache;
+    }
+
+    /**
+     * Returns the coalescer shared by concurrent identical GET requests, or null if
+     * {@link AuthsignalClientOptions#coalesceGets} is disabled.
+     */
+    public SingleFlight<String, Object> getRequestCoalescer() {
+        return requestCoalescer;
+    }
+
+    /**
+     * Returns the filter of sessions revoked through this client or its webhook, or null if
+     * local session validation is disabled.
+     */
+    public SessionRevocationFilter getSessionRevocationFilter() {
+        return revocationFilter;
+    }
+
+    /**
+     * Returns the coalescer shared by concurrent refreshes of the same refresh token.
+     */
+    public SingleFlight<String, RefreshSessionResponse> getSessionRefreshCoalescer() {
+        return refreshCoalescer;
+    }
+
+    /**
+     * Returns the cache of {@link #validateSession} results, or null if it is disabled. Every hit
+     * is a validation served without a round trip.
+     */
+    public SegmentedLruCache<String, ValidateSessionResponse> getSessionCache() {
+        return sessionCache;
+    }
+
+    /**
+     * Drops the cached user named by a webhook event's {@code userId}. The client's own
+     * {@link #webhook} does this automatically; register it on other {@link Webhook} instances
+     * with {@code webhook.addListener(client::invalidateCachedUser)}.
+     */
+    public void invalidateCachedUser(WebhookEvent event) {
+        if (userCache != null && event.data != null && event.data.get("userId") != null) {
+            userCache.invalidate(event.data.get("userId"));
+        }
+    }
+
+    /**
+     * Drops the cached user once a write to it completes, whether or not it succeeded.
+     */
+    private <T> CompletableFuture<T> invalidatingUser(String userId, CompletableFuture<T> future) {
+        if (userCache == null) {
+            return future;
+        }
+
+        return future.whenComplete((result, ex) -> userCache.invalidate(userId));
+    }
+
+    /**
+     * Releases the connection pool. Requests made after the client is closed fail with an
+     * {@link IllegalStateException}.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        if (ownedDecodeExecutor != null) {
+            ownedDecodeExecutor.shutdown();
+        }
+
+        // HttpClient is only closeable from Java 21 onwards, earlier versions release their
+        // connections and selector thread once the client is no longer referenced
+        if (httpClient instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) httpClient).close();
+            } catch (Exception ex) {
+                // Nothing further to release
+            }
+        }
+    }
+
+    private static HttpClient buildHttpClient(AuthsignalClientOptions options) {
+        // The JDK client negotiates HTTP/2 per origin and falls back to HTTP/1.1 by itself,
+        // multiplexing all streams to an origin over one connection
+        HttpClient.Builder builder = HttpClient
+                .newBuilder()
+                .version(options.http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1);
+
+        if (options.connectTimeout != null) {
+            builder.connectTimeout(options.connectTimeout);
+        }
+
+        if (options.executor != null) {
+            builder.executor(options.executor);
+        }
+
+        return builder.build();
+    }
+
+    private static AuthsignalClientOptions optionsWithRetries(int retries) {
+        AuthsignalClientOptions options = new AuthsignalClientOptions();
+        options.retries = retries;
+        return options;
+    }
+
     private String getBasicAuthHeader() {
         return "Basic " + Base64.getEncoder().encodeToString((this._secret + ":").getBytes());
     }
 
-    private AuthsignalException mapToAuthsignalException(HttpResponse<String> response) {
-        AuthsignalErrorResponse errorResponse = new Gson().fromJson(response.body(), AuthsignalErrorResponse.class);
+    private AuthsignalException mapToAuthsignalException(int statusCode, Duration retryAfter, byte[] body) {
+        AuthsignalErrorResponse errorResponse = codec.fromBytes(body, AuthsignalErrorResponse.class);
+
+        if (errorResponse == null) {
+            return new AuthsignalException(statusCode, null, null, retryAfter);
+        }
 
-        return new AuthsignalException(response.statusCode(), errorResponse.error, errorResponse.errorDescription);
+        return new AuthsignalException(statusCode, errorResponse.error, errorResponse.errorDescription, retryAfter);
     }
 
-    private CompletableFuture<HttpResponse<String>> sendHttpRequest(HttpRequest request, int retryCount) {
-        HttpClient client = HttpClient
-                .newBuilder()
-                .version(HttpClient.Version.HTTP_1_1)
-                .build();
+    /**
+     * Parses a {@code Retry-After} header given either in seconds or as an HTTP date. Returns null
+     * if the header is missing or malformed.
+     */
+    private static Duration parseRetryAfter(HttpHeaders headers) {
+        String value = headers.firstValue("Retry-After").map(String::trim).orElse(null);
+
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value)));
+        } catch (NumberFormatException ex) {
+            // Not in seconds, so try the date form
+        }
 
-        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+        try {
+            Instant until = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            Duration delay = Duration.between(Instant.now(), until);
+            return delay.isNegative() ? Duration.ZERO : delay;
+        } catch (DateTimeParseException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Decodes successful responses incrementally from the response stream into the response
+     * type, so the body is never buffered in full. Error responses are small and are read in full
+     * before being mapped to an {@link AuthsignalException}.
+     *
+     * Reading the stream blocks until data arrives, so {@link ResponseBody#decode} must be called
+     * on the decode executor rather than on the HTTP client's own threads, which deliver the body.
+     */
+    private <T> HttpResponse.BodyHandler<ResponseBody<T>> jsonBodyHandler(Class<T> responseType) {
+        return responseInfo -> {
+            int statusCode = responseInfo.statusCode();
+
+            if (!isSuccessResponse(statusCode)) {
+                Duration retryAfter = parseRetryAfter(responseInfo.headers());
+
+                return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofByteArray(),
+                        body -> new ResponseBody<T>(() -> {
+                            throw new CompletionException(mapToAuthsignalException(statusCode, retryAfter, body));
+                        }));
+            }
+
+            if (responseType == Void.class) {
+                return HttpResponse.BodySubscribers.replacing(new ResponseBody<T>(() -> null));
+            }
+
+            return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofInputStream(),
+                    stream -> new ResponseBody<T>(() -> {
+                        try (InputStream body = stream) {
+                            return codec.fromStream(body, responseType);
+                        } catch (IOException ex) {
+                            throw new UncheckedIOException(ex);
+                        }
+                    }));
+        };
+    }
+
+    private <T> CompletableFuture<T> sendHttpRequest(HttpRequest request, Class<T> responseType,
+            int retryCount) {
+        if (closed) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalStateException("The client has been closed."));
+            return future;
+        }
+
+        // The request holds its place in the limiter until its response has been decoded
+        return limiter.submit(() -> httpClient.sendAsync(request, jsonBodyHandler(responseType))
+                .thenApplyAsync(response -> {
+                    response.body().decode();
+                    return response;
+                }, decodeExecutor))
                 .handle((response, throwable) -> {
                     if (shouldRetry(request, response, throwable, retryCount)) {
                         long delay = (long) (100 * Math.pow(2, retryCount + 1));
 
                         return CompletableFuture.supplyAsync(() -> null,
                                 CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
-                                .thenCompose(f -> sendHttpRequest(request, retryCount + 1));
+                                .thenCompose(f -> sendHttpRequest(request, responseType, retryCount + 1));
                     }
 
+                    CompletableFuture<T> future = new CompletableFuture<>();
+
                     // Complete with HTTP client error
                     if (throwable != null) {
-                        CompletableFuture<HttpResponse<String>> future = new CompletableFuture<>();
                         future.completeExceptionally(throwable);
                         return future;
                     }
 
-                    // Complete with Authsignal server error
-                    if (!isSuccessResponse(response.statusCode())) {
-                        CompletableFuture<HttpResponse<String>> future = new CompletableFuture<>();
-                        future.completeExceptionally(mapToAuthsignalException(response));
-                        return future;
-                    }
-
-                    // Complete successfully
-                    return CompletableFuture.completedFuture(response);
+                    // Complete with the decoded response, or with the Authsignal server error
+                    response.body().complete(future);
+                    return future;
                 }).thenCompose(future -> future);
     }
 
-    private CompletableFuture<HttpResponse<String>> sendHttpRequest(HttpRequest request) {
-        return sendHttpRequest(request, 0);
+    private <T> CompletableFuture<T> sendHttpRequest(HttpRequest request, Class<T> responseType) {
+        return sendHttpRequest(request, responseType, 0);
     }
 
-    private boolean shouldRetry(HttpRequest request, HttpResponse<String> response, Throwable error, int retryCount) {
+    private boolean shouldRetry(HttpRequest request, HttpResponse<?> response, Throwable error, int retryCount) {
         if (retryCount >= retries) {
             return false;
         }
@@ -412,4 +927,33 @@ public class AuthsignalClient {
                 .map(e -> e.getKey() + "=" + URLEncoder.encode(e.getValue(), StandardCharsets.UTF_8))
                 .collect(Collectors.joining("&"));
     }
+
+    /**
+     * A response body that has been received in full but not yet decoded.
+     */
+    private static final class ResponseBody<T> {
+        private final Supplier<T> decoder;
+        private T value;
+        private RuntimeException error;
+
+        ResponseBody(Supplier<T> decoder) {
+            this.decoder = decoder;
+        }
+
+        void decode() {
+            try {
+                value = decoder.get();
+            } catch (RuntimeException ex) {
+                error = ex;
+            }
+        }
+
+        void complete(CompletableFuture<T> future) {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(value);
+            }
+        }
+    }
 }
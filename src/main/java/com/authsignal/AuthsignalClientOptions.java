@@ -0,0 +1,175 @@
+package com.authsignal;
+
+import com.authsignal.json.JsonCodec;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+
+/**
+ * Optional settings for {@link AuthsignalClient}.
+ *
+ * A client owns one long-lived HTTP transport which is shared by every API call, so these
+ * settings apply for the lifetime of the client. Fields left unset keep their defaults.
+ */
+public class AuthsignalClientOptions {
+    /**
+     * The number of times a failed request is retried.
+     */
+    public int retries = 2;
+
+    /**
+     * The maximum number of requests the client keeps in flight at once, which bounds the number
+     * of open connections. Further requests wait for a free slot. Zero or less means no limit.
+     */
+    public int maxConnections = 0;
+
+    /**
+     * Sends requests over HTTP/2 so that concurrent calls are multiplexed over a single
+     * connection. Servers that do not support HTTP/2 are spoken to over HTTP/1.1 instead.
+     */
+    public boolean http2 = false;
+
+    /**
+     * The maximum number of requests the client keeps in flight at once when {@link #http2} is
+     * enabled, used instead of {@link #maxConnections}. This is a limit for the whole client, not
+     * per connection: HTTP/2 requests to the API share one connection, so in practice it bounds
+     * the streams open on it. Further requests wait for a free slot. Zero or less means no limit
+     * beyond the server's own stream limit.
+     */
+    public int maxConcurrentStreams = 100;
+
+    /**
+     * The maximum time to wait when opening a new connection. Defaults to no timeout.
+     */
+    public Duration connectTimeout;
+
+    /**
+     * The executor the JDK HTTP client runs its asynchronous work on, including delivering
+     * response bodies. Defaults to the HTTP client's own executor. Response bodies are decoded on
+     * {@link #decodeExecutor}, not on this executor.
+     */
+    public Executor executor;
+
+    /**
+     * The executor that reads and decodes response bodies as they arrive. Reading blocks until
+     * more of the body has been received, so this must not be {@link #executor}, which delivers
+     * the body. Defaults to daemon threads owned by the client, one per response being decoded,
+     * which are released when the client is closed.
+     */
+    public Executor decodeExecutor;
+
+    /**
+     * The codec used to encode requests, decode responses and construct webhook events.
+     * Defaults to {@link JsonCodec#getDefault()}.
+     */
+    public JsonCodec jsonCodec;
+
+    /**
+     * How long {@link AuthsignalClient#getUser} responses are cached for. The cache is disabled
+     * unless this is set.
+     *
+     * Cached users are dropped when they are changed through the client, or when the client's
+     * webhook verifies an event for them. Changes made elsewhere are seen once the entry expires.
+     */
+    public Duration userCacheTtl;
+
+    /**
+     * The maximum number of users kept in the cache when {@link #userCacheTtl} is set.
+     */
+    public int userCacheMaxSize = 10_000;
+
+    /**
+     * Coalesces concurrent GET requests for the same path into a single HTTP request whose
+     * result, or failure, is handed to every caller. Callers then share the same response
+     * object, so it should not be modified.
+     */
+    public boolean coalesceGets = false;
+
+    /**
+     * The URL of the JSON Web Key Set that session access tokens are signed with. When set,
+     * {@link AuthsignalClient#validateSession} verifies RS256 and ES256 tokens locally against
+     * these keys instead of calling the API, and only calls the API for tokens signed with a key
+     * that is not in the set.
+     *
+     * Locally validated responses are built from the token's claims: {@code sub} becomes the user
+     * id, and {@code email}, {@code phoneNumber}, {@code username}, {@code displayName} and
+     * {@code custom} are copied when present. Invalid or expired tokens fail with an
+     * {@link com.authsignal.exception.AuthsignalException} with status 401.
+     *
+     * {@link #sessionIssuer} must be set as well.
+     */
+    public String sessionKeysURL;
+
+    /**
+     * The {@code iss} claim of the tenant's session access tokens. Only tokens with this issuer
+     * are validated locally; any other token signed with a session key is sent to the API.
+     * Required when {@link #sessionKeysURL} is set.
+     */
+    public String sessionIssuer;
+
+    /**
+     * A scope that tokens must list in their space-separated {@code scope} claim to be validated
+     * locally. Tokens without it are sent to the API. No scope is required when this is null.
+     */
+    public String sessionTokenScope;
+
+    /**
+     * How far a token's {@code exp} and {@code nbf} claims may be off from this host's clock when
+     * it is validated locally.
+     */
+    public Duration sessionClockSkew = Duration.ofSeconds(30);
+
+    /**
+     * How long the fetched session keys are used before they are refreshed in the background.
+     */
+    public Duration sessionKeysRefreshInterval = Duration.ofMinutes(15);
+
+    /**
+     * The number of revoked sessions each generation of the client's revocation filter is sized
+     * for when sessions are validated locally. The filter holds eight generations of roughly
+     * 1.2 bytes per session each.
+     */
+    public int sessionRevocationCapacity = 100_000;
+
+    /**
+     * The longest an access token stays valid after it is issued. Revocations are remembered
+     * this long, so it should not be shorter than the tenant's access token lifetime.
+     */
+    public Duration maxSessionLifetime = Duration.ofDays(1);
+
+    /**
+     * The webhook event types that revoke sessions. Verified events of these types with an
+     * {@code accessToken} or {@code userId} in their data are added to the revocation filter and
+     * dropped from the session cache, so that revocations made on other nodes take effect here too.
+     */
+    public String[] sessionRevocationEventTypes = new String[0];
+
+    /**
+     * The maximum number of {@link AuthsignalClient#validateSession} results kept in the client's
+     * session cache. The cache is disabled when this is zero.
+     *
+     * Results are keyed by a SHA-256 hash of the access token and are kept until shortly before
+     * the session expires, or for {@link #sessionCacheTtl} if that is sooner. Sessions revoked
+     * through the client, or by webhook events of {@link #sessionRevocationEventTypes}, are
+     * dropped straight away.
+     */
+    public int sessionCacheMaxSize = 0;
+
+    /**
+     * The longest a session validation result is cached for, which bounds how long a session
+     * revoked elsewhere can still be served from the cache.
+     */
+    public Duration sessionCacheTtl = Duration.ofMinutes(5);
+
+    /**
+     * How long a {@link AuthsignalClient#refreshSession} response is kept, keyed by a hash of the
+     * refresh token, and handed to later refreshes of the same token. This lets parallel requests
+     * that raced to refresh an expired session all receive the new tokens. Disabled when null or
+     * zero, which is the default; concurrent refreshes still share one request.
+     *
+     * Enabling it weakens refresh token rotation: a refresh token that was already used is
+     * answered with fresh tokens for this long instead of being reported to the API as reused, so
+     * a stolen token replayed within the window is not detected. Keep it to a few seconds.
+     */
+    public Duration sessionRefreshRetention;
+}
@@ -0,0 +1,32 @@
+package com.authsignal;
+
+/**
+ * Optional settings for {@link BulkUserOperations}. Fields left unset keep their defaults.
+ */
+public class BulkOptions {
+    /**
+     * The maximum number of requests kept in flight. Requests are read from the input only as
+     * earlier ones complete, so memory use does not grow with the size of the batch.
+     */
+    public int maxInFlight = 16;
+
+    /**
+     * The maximum number of failures kept in the report. Further failures are only counted.
+     */
+    public int maxRecordedFailures = 100;
+
+    /**
+     * The number of completed requests between calls to {@link #progressListener}.
+     */
+    public int progressInterval = 100;
+
+    /**
+     * Called as requests complete, every {@link #progressInterval} completions and once more when
+     * the batch is done.
+     */
+    public ProgressListener progressListener;
+
+    public interface ProgressListener {
+        void onProgress(long succeeded, long failed);
+    }
+}
@@ -0,0 +1,85 @@
+package com.authsignal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The outcome of a bulk operation: how many requests succeeded and failed, and the first failures.
+ */
+public class BulkReport {
+    private final int maxRecordedFailures;
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final List<Failure> failures = new ArrayList<>();
+    private final AtomicReference<Throwable> listenerError = new AtomicReference<>();
+
+    BulkReport(int maxRecordedFailures) {
+        this.maxRecordedFailures = maxRecordedFailures;
+    }
+
+    public long getSucceededCount() {
+        return succeeded.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * Returns the failures recorded, in the order they occurred, up to
+     * {@link BulkOptions#maxRecordedFailures}.
+     */
+    public synchronized List<Failure> getFailures() {
+        return Collections.unmodifiableList(new ArrayList<>(failures));
+    }
+
+    /**
+     * Returns the first exception thrown by {@link BulkOptions#progressListener}, or null if it
+     * never threw. A listener that throws does not stop the operation or change its counts.
+     */
+    public Throwable getListenerError() {
+        return listenerError.get();
+    }
+
+    void recordSuccess() {
+        succeeded.increment();
+    }
+
+    void recordFailure(String userId, Throwable error) {
+        failed.increment();
+
+        synchronized (this) {
+            if (failures.size() < maxRecordedFailures) {
+                failures.add(new Failure(userId, error));
+            }
+        }
+    }
+
+    void recordListenerError(Throwable error) {
+        listenerError.compareAndSet(null, error);
+    }
+
+    public static class Failure {
+        private final String userId;
+        private final Throwable error;
+
+        Failure(String userId, Throwable error) {
+            this.userId = userId;
+            this.error = error;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        /**
+         * Returns the error, usually an {@link com.authsignal.exception.AuthsignalException}.
+         */
+        public Throwable getError() {
+            return error;
+        }
+    }
+}
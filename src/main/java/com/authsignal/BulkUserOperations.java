@@ -0,0 +1,241 @@
+package com.authsignal;
+
+import com.authsignal.model.DeleteUserRequest;
+import com.authsignal.model.GetAuthenticatorsRequest;
+import com.authsignal.model.GetUserRequest;
+import com.authsignal.model.GetUserResponse;
+import com.authsignal.model.RevokeUserSessionsRequest;
+import com.authsignal.model.UpdateUserRequest;
+import com.authsignal.model.UserAuthenticator;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Runs user calls over many users, such as when offboarding a tenant or showing a page of users.
+ *
+ * Requests are read from the input only as earlier ones complete, keeping at most
+ * {@link BulkOptions#maxInFlight} in flight. Lifecycle calls gather their results into one
+ * {@link BulkReport} and lookups into a {@link MultiGetResult}. A failed request is recorded in
+ * the result and does not stop the others.
+ */
+public class BulkUserOperations {
+    private final AuthsignalClient client;
+    private final BulkOptions options;
+
+    public BulkUserOperations(AuthsignalClient client) {
+        this(client, new BulkOptions());
+    }
+
+    public BulkUserOperations(AuthsignalClient client, BulkOptions options) {
+        this.client = client;
+        this.options = options;
+    }
+
+    public CompletableFuture<BulkReport> deleteUsers(Iterable<DeleteUserRequest> requests) {
+        return run(requests.iterator(), client::deleteUser, request -> request.userId);
+    }
+
+    public CompletableFuture<BulkReport> deleteUsers(Stream<DeleteUserRequest> requests) {
+        return run(requests, client::deleteUser, request -> request.userId);
+    }
+
+    public CompletableFuture<BulkReport> revokeUserSessions(Iterable<RevokeUserSessionsRequest> requests) {
+        return run(requests.iterator(), client::revokeUserSessions, request -> request.userId);
+    }
+
+    public CompletableFuture<BulkReport> revokeUserSessions(Stream<RevokeUserSessionsRequest> requests) {
+        return run(requests, client::revokeUserSessions, request -> request.userId);
+    }
+
+    public CompletableFuture<BulkReport> updateUsers(Iterable<UpdateUserRequest> requests) {
+        return run(requests.iterator(), client::updateUser, request -> request.userId);
+    }
+
+    public CompletableFuture<BulkReport> updateUsers(Stream<UpdateUserRequest> requests) {
+        return run(requests, client::updateUser, request -> request.userId);
+    }
+
+    /**
+     * Looks up each user once, however often their id appears, with at most
+     * {@link BulkOptions#maxInFlight} lookups in flight. Users in the client's user cache are
+     * served from it.
+     */
+    public CompletableFuture<MultiGetResult<GetUserResponse>> getUsers(Collection<String> userIds) {
+        return multiGet(userIds, userId -> {
+            GetUserRequest request = new GetUserRequest();
+            request.userId = userId;
+            return client.getUser(request);
+        });
+    }
+
+    /**
+     * Looks up the authenticators of each user once, however often their id appears, with at most
+     * {@link BulkOptions#maxInFlight} lookups in flight.
+     */
+    public CompletableFuture<MultiGetResult<UserAuthenticator[]>> getAuthenticators(Collection<String> userIds) {
+        return multiGet(userIds, userId -> {
+            GetAuthenticatorsRequest request = new GetAuthenticatorsRequest();
+            request.userId = userId;
+            return client.getAuthenticators(request);
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private <V> CompletableFuture<MultiGetResult<V>> multiGet(Collection<String> userIds,
+            Function<String, CompletableFuture<V>> lookup) {
+        MultiGetResult<V> result = new MultiGetResult<>();
+
+        Batch<String> batch = new Batch<>(new LinkedHashSet<>(userIds).iterator(), lookup,
+                (userId, value) -> result.putValue(userId, (V) value),
+                result::putError);
+
+        batch.drain();
+        return batch.done.thenApply(ignored -> result);
+    }
+
+    private <R> CompletableFuture<BulkReport> run(Stream<R> requests,
+            Function<R, CompletableFuture<?>> call, Function<R, String> userId) {
+        CompletableFuture<BulkReport> report = run(requests.iterator(), call, userId);
+        report.whenComplete((result, ex) -> requests.close());
+        return report;
+    }
+
+    private <R> CompletableFuture<BulkReport> run(Iterator<R> requests,
+            Function<R, CompletableFuture<?>> call, Function<R, String> userId) {
+        BulkReport report = new BulkReport(options.maxRecordedFailures);
+        AtomicLong completed = new AtomicLong();
+
+        Runnable progress = () -> {
+            if (options.progressListener == null) {
+                return;
+            }
+
+            try {
+                options.progressListener.onProgress(report.getSucceededCount(), report.getFailedCount());
+            } catch (RuntimeException ex) {
+                report.recordListenerError(ex);
+            }
+        };
+
+        Runnable completion = () -> {
+            if (options.progressInterval > 0 && completed.incrementAndGet() % options.progressInterval == 0) {
+                progress.run();
+            }
+        };
+
+        Batch<R> batch = new Batch<R>(requests, call,
+                (request, value) -> {
+                    report.recordSuccess();
+                    completion.run();
+                },
+                (request, error) -> {
+                    report.recordFailure(userId.apply(request), error);
+                    completion.run();
+                });
+
+        batch.drain();
+
+        return batch.done.thenApply(ignored -> {
+            progress.run();
+            return report;
+        });
+    }
+
+    private final class Batch<R> {
+        private final Iterator<R> requests;
+        private final Function<R, ? extends CompletableFuture<?>> call;
+        private final BiConsumer<R, Object> onSuccess;
+        private final BiConsumer<R, Throwable> onFailure;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger wip = new AtomicInteger();
+
+        // Only read and written inside drain(), which runs on one thread at a time
+        private boolean exhausted;
+
+        Batch(Iterator<R> requests, Function<R, ? extends CompletableFuture<?>> call,
+                BiConsumer<R, Object> onSuccess, BiConsumer<R, Throwable> onFailure) {
+            this.requests = requests;
+            this.call = call;
+            this.onSuccess = onSuccess;
+            this.onFailure = onFailure;
+        }
+
+        /**
+         * Starts requests until the window is full. Completions call this again rather than
+         * starting the next request themselves, so calls that complete straight away do not recurse.
+         */
+        void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+
+            int missed = 1;
+
+            do {
+                try {
+                    fill();
+                } catch (RuntimeException ex) {
+                    // The input itself failed, so no more requests can be read
+                    exhausted = true;
+                    done.completeExceptionally(ex);
+                }
+
+                if (exhausted && inFlight.get() == 0) {
+                    done.complete(null);
+                }
+
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void fill() {
+            int maxInFlight = Math.max(1, options.maxInFlight);
+
+            while (!exhausted && inFlight.get() < maxInFlight) {
+                if (!requests.hasNext()) {
+                    exhausted = true;
+                    return;
+                }
+
+                R request = requests.next();
+                inFlight.incrementAndGet();
+
+                CompletableFuture<?> future;
+
+                try {
+                    future = call.apply(request);
+                } catch (RuntimeException ex) {
+                    future = new CompletableFuture<>();
+                    future.completeExceptionally(ex);
+                }
+
+                future.whenComplete((value, ex) -> {
+                    try {
+                        if (ex != null) {
+                            onFailure.accept(request,
+                                    ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+                        } else {
+                            onSuccess.accept(request, value);
+                        }
+                    } catch (RuntimeException callbackError) {
+                        done.completeExceptionally(callbackError);
+                    } finally {
+                        // Always free the slot, or the batch would never complete
+                        inFlight.decrementAndGet();
+                        drain();
+                    }
+                });
+            }
+        }
+    }
+}
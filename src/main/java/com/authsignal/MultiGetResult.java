@@ -0,0 +1,36 @@
+package com.authsignal;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The results of looking up many users, keyed by user id. Each id is in either the values or the
+ * errors, in the order the lookups completed.
+ */
+public class MultiGetResult<V> {
+    private final Map<String, V> values = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final Map<String, Throwable> errors = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    MultiGetResult() {
+    }
+
+    public Map<String, V> getValues() {
+        return Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * Returns the errors of failed lookups, usually {@link com.authsignal.exception.AuthsignalException}s.
+     */
+    public Map<String, Throwable> getErrors() {
+        return Collections.unmodifiableMap(errors);
+    }
+
+    void putValue(String userId, V value) {
+        values.put(userId, value);
+    }
+
+    void putError(String userId, Throwable error) {
+        errors.put(userId, error);
+    }
+}
@@ -0,0 +1,169 @@
+package com.authsignal;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the items of a paged API result, fetching each page only once the subscriber has asked
+ * for more items than the pages already fetched hold.
+ *
+ * Each subscriber gets its own pass over the pages. At most one page is held and one request is in
+ * flight per subscriber, so a slow subscriber holds back fetching rather than making items pile up.
+ */
+final class PagedPublisher<T> implements Flow.Publisher<T> {
+    interface PageSource<T> {
+        /**
+         * Fetches the page after the given cursor, or the first page when the cursor is null.
+         */
+        CompletableFuture<Page<T>> fetch(String cursor);
+    }
+
+    static final class Page<T> {
+        final List<T> items;
+        final String nextCursor;
+
+        /**
+         * @param nextCursor the cursor of the following page, or null if this is the last page
+         */
+        Page(List<T> items, String nextCursor) {
+            this.items = items != null ? items : Collections.<T>emptyList();
+            this.nextCursor = nextCursor;
+        }
+    }
+
+    private final PageSource<T> source;
+
+    PagedPublisher(PageSource<T> source) {
+        this.source = source;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber must not be null");
+        }
+
+        PageSubscription subscription = new PageSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        subscription.drain();
+    }
+
+    private final class PageSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super T> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+
+        // Only read and written inside drain(), which runs on one thread at a time
+        private Page<T> page;
+        private int index;
+        private boolean started;
+        private boolean terminated;
+
+        private volatile boolean fetching;
+        private volatile Page<T> fetched;
+        private volatile Throwable error;
+        private volatile boolean cancelled;
+
+        PageSubscription(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("The number of items requested must be positive.");
+            } else {
+                demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            }
+
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+
+            int missed = 1;
+
+            do {
+                if (!terminated) {
+                    emit();
+                }
+
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void emit() {
+            if (!fetching && fetched != null) {
+                page = fetched;
+                index = 0;
+                fetched = null;
+            }
+
+            while (!cancelled && error == null && page != null && index < page.items.size() && demand.get() > 0) {
+                T item = page.items.get(index++);
+                demand.decrementAndGet();
+                subscriber.onNext(item);
+            }
+
+            if (cancelled) {
+                terminated = true;
+                page = null;
+                return;
+            }
+
+            if (error != null) {
+                terminated = true;
+                subscriber.onError(error);
+                return;
+            }
+
+            boolean exhausted = page == null ? started : index >= page.items.size();
+
+            if (exhausted && page != null && page.nextCursor == null) {
+                terminated = true;
+                subscriber.onComplete();
+            } else if ((exhausted || !started) && !fetching && demand.get() > 0) {
+                fetch(page != null ? page.nextCursor : null);
+            }
+        }
+
+        private void fetch(String cursor) {
+            started = true;
+            fetching = true;
+
+            CompletableFuture<Page<T>> next;
+
+            try {
+                next = source.fetch(cursor);
+            } catch (RuntimeException ex) {
+                next = new CompletableFuture<>();
+                next.completeExceptionally(ex);
+            }
+
+            next.whenComplete((result, ex) -> {
+                if (ex != null) {
+                    error = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                } else {
+                    fetched = result;
+                }
+
+                fetching = false;
+                drain();
+            });
+        }
+    }
+}
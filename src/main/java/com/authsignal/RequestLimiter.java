@@ -0,0 +1,119 @@
+package com.authsignal;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Bounds the number of asynchronous tasks in flight. Tasks submitted while the limit is reached
+ * are queued and started, in order, as earlier tasks complete.
+ */
+class RequestLimiter {
+    private final Queue<Runnable> pending = new ArrayDeque<>();
+    private final AtomicInteger wip = new AtomicInteger();
+    private int limit;
+    private int inFlight;
+
+    RequestLimiter(int limit) {
+        this.limit = limit;
+    }
+
+    <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+
+        Runnable start = () -> {
+            CompletableFuture<T> future;
+
+            try {
+                future = task.get();
+            } catch (Throwable ex) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(ex);
+            }
+
+            future.whenComplete((value, throwable) -> {
+                release();
+
+                if (throwable != null) {
+                    result.completeExceptionally(throwable);
+                } else {
+                    result.complete(value);
+                }
+            });
+        };
+
+        synchronized (this) {
+            pending.add(start);
+        }
+
+        drain();
+
+        return result;
+    }
+
+    synchronized int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Changes the limit. Raising it starts queued tasks straight away; lowering it lets tasks
+     * already in flight finish.
+     */
+    void setLimit(int limit) {
+        synchronized (this) {
+            this.limit = limit;
+        }
+
+        drain();
+    }
+
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    synchronized int getQueued() {
+        return pending.size();
+    }
+
+    private void release() {
+        synchronized (this) {
+            inFlight--;
+        }
+
+        drain();
+    }
+
+    /**
+     * Starts queued tasks while there is room. Only one thread drains at a time, so a task that
+     * completes as soon as it starts releases its slot into the loop already running rather than
+     * draining again further down the stack.
+     */
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+
+        int missed = 1;
+
+        do {
+            while (true) {
+                Runnable next;
+
+                synchronized (this) {
+                    if (pending.isEmpty() || (limit > 0 && inFlight >= limit)) {
+                        break;
+                    }
+
+                    next = pending.poll();
+                    inFlight++;
+                }
+
+                next.run();
+            }
+
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+}
@@ -0,0 +1,374 @@
+package com.authsignal;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+import java.util.function.LongSupplier;
+
+/**
+ * A size-bounded cache whose entries expire a set time after they are written.
+ *
+ * Eviction follows a segmented LRU policy. New entries go into a probationary segment and are
+ * only promoted to the protected segment, which holds most of the capacity, when they are read
+ * again. A burst of keys that are each read once therefore only evicts other probationary
+ * entries and does not flush the frequently read ones.
+ *
+ * Larger caches are split by key hash into stripes, each with its own lock and its own share of
+ * the capacity, so that reads of different keys do not contend. Eviction order is kept per stripe.
+ *
+ * Entries may be stored with tags, such as the user a value belongs to, so that every entry with
+ * a tag can be invalidated by looking the tag up rather than scanning the cache.
+ */
+public class SegmentedLruCache<K, V> {
+    private static final int MAX_STRIPES = 16;
+    private static final int MIN_STRIPE_SIZE = 256;
+    private static final int INVALIDATION_SLOTS = 1024;
+
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final List<Stripe> stripes;
+
+    // Invalidations are stamped from one counter. A fill that read an earlier version is dropped
+    // if its key or one of its tags has been stamped since, or if the whole cache has been.
+    private final AtomicLong versions = new AtomicLong();
+    private final AtomicLongArray invalidatedAt = new AtomicLongArray(INVALIDATION_SLOTS);
+    private final AtomicLong allInvalidatedAt = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public SegmentedLruCache(int maxSize, Duration ttl) {
+        this(maxSize, ttl, System::nanoTime);
+    }
+
+    SegmentedLruCache(int maxSize, Duration ttl, LongSupplier clock) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1");
+        }
+
+        this.ttlNanos = ttl.toNanos();
+        this.clock = clock;
+
+        int count = 1;
+
+        while (count < MAX_STRIPES && maxSize / (count * 2) >= MIN_STRIPE_SIZE) {
+            count *= 2;
+        }
+
+        this.stripes = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            stripes.add(new Stripe(maxSize / count + (i < maxSize % count ? 1 : 0)));
+        }
+    }
+
+    /**
+     * Returns the cached value, or null if there is none or it has expired.
+     */
+    public V get(K key) {
+        return stripe(key).get(key);
+    }
+
+    public void put(K key, V value) {
+        stripe(key).store(key, value, Long.MAX_VALUE, ttlNanos, new Object[0]);
+    }
+
+    /**
+     * Stores a value which expires after the given time rather than the cache's default TTL.
+     */
+    public void put(K key, V value, Duration ttl) {
+        stripe(key).store(key, value, Long.MAX_VALUE, ttl.toNanos(), new Object[0]);
+    }
+
+    /**
+     * Stores a value unless the key was invalidated after {@code version} was read, in which case
+     * the value may already be stale and is dropped. Returns whether the value was stored.
+     */
+    boolean put(K key, V value, long version) {
+        return stripe(key).store(key, value, version, ttlNanos, new Object[0]);
+    }
+
+    /**
+     * Stores a value with a custom TTL unless the key or one of the tags was invalidated after
+     * {@code version} was read, and tags it so that it is removed by
+     * {@link #invalidateTagged(Object)} with any of the tags.
+     */
+    boolean put(K key, V value, long version, Duration ttl, Object... tags) {
+        return stripe(key).store(key, value, version, ttl.toNanos(), tags);
+    }
+
+    /**
+     * Returns a token to pass to {@link #put(Object, Object, long)} when the value is loaded
+     * asynchronously and may race with an invalidation.
+     */
+    long version() {
+        return versions.get();
+    }
+
+    public void invalidate(K key) {
+        stamp(key);
+        stripe(key).remove(key);
+    }
+
+    /**
+     * Removes every entry stored with the tag, finding them through the tag rather than by
+     * scanning the cache.
+     */
+    public void invalidateTagged(Object tag) {
+        stamp(tag);
+
+        for (Stripe stripe : stripes) {
+            stripe.removeTagged(tag);
+        }
+    }
+
+    /**
+     * Removes every entry that matches. This scans the whole cache and drops every value being
+     * loaded, so it is meant for rare invalidations that cannot be expressed by a key or tag.
+     */
+    public void invalidateIf(BiPredicate<? super K, ? super V> predicate) {
+        allInvalidatedAt.accumulateAndGet(versions.incrementAndGet(), Math::max);
+
+        for (Stripe stripe : stripes) {
+            stripe.removeIf(predicate);
+        }
+    }
+
+    public void invalidateAll() {
+        allInvalidatedAt.accumulateAndGet(versions.incrementAndGet(), Math::max);
+
+        for (Stripe stripe : stripes) {
+            stripe.clear();
+        }
+    }
+
+    /**
+     * Returns the number of entries held, including any that have expired but not been evicted.
+     */
+    public int size() {
+        int size = 0;
+
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+
+        return size;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the fraction of reads that were served from the cache.
+     */
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total > 0 ? (double) hitCount / total : 0;
+    }
+
+    /**
+     * Returns the number of entries removed to stay within the size bound.
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    private static int spread(Object value) {
+        int h = value.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private Stripe stripe(K key) {
+        return stripes.get(spread(key) & (stripes.size() - 1));
+    }
+
+    /**
+     * Records that a key or tag was invalidated. Keys and tags share a fixed number of slots, so
+     * an invalidation may also drop an unrelated fill whose key lands in the same slot.
+     */
+    private void stamp(Object keyOrTag) {
+        long version = versions.incrementAndGet();
+        invalidatedAt.accumulateAndGet(spread(keyOrTag) & (INVALIDATION_SLOTS - 1), version, Math::max);
+    }
+
+    private boolean isStale(Object keyOrTag, long version) {
+        return invalidatedAt.get(spread(keyOrTag) & (INVALIDATION_SLOTS - 1)) > version;
+    }
+
+    private final class Stripe {
+        private final int maxSize;
+        private final int protectedMaxSize;
+        private final LinkedHashMap<K, Entry<V>> probation = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<K, Entry<V>> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+        private final Map<Object, Set<K>> tagged = new HashMap<>();
+
+        Stripe(int maxSize) {
+            this.maxSize = maxSize;
+            this.protectedMaxSize = maxSize * 4 / 5;
+        }
+
+        synchronized V get(K key) {
+            Entry<V> entry = protectedSegment.get(key);
+            boolean isProtected = entry != null;
+
+            if (!isProtected) {
+                entry = probation.get(key);
+            }
+
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+
+            if (clock.getAsLong() - entry.expiresAt >= 0) {
+                (isProtected ? protectedSegment : probation).remove(key);
+                untag(key, entry);
+                misses.increment();
+                return null;
+            }
+
+            if (!isProtected) {
+                probation.remove(key);
+                protectedSegment.put(key, entry);
+
+                // Make room by moving the least recently read protected entries back to probation
+                Iterator<Map.Entry<K, Entry<V>>> it = protectedSegment.entrySet().iterator();
+
+                while (protectedSegment.size() > protectedMaxSize && it.hasNext()) {
+                    Map.Entry<K, Entry<V>> eldest = it.next();
+                    it.remove();
+                    probation.put(eldest.getKey(), eldest.getValue());
+                }
+            }
+
+            hits.increment();
+            return entry.value;
+        }
+
+        synchronized boolean store(K key, V value, long version, long ttlNanos, Object[] tags) {
+            // Checked under the stripe's lock, so an invalidation stamped after this check removes
+            // the entry once it takes the lock
+            if (version < allInvalidatedAt.get() || isStale(key, version)) {
+                return false;
+            }
+
+            for (Object tag : tags) {
+                if (isStale(tag, version)) {
+                    return false;
+                }
+            }
+
+            remove(key);
+
+            Entry<V> entry = new Entry<>(value, clock.getAsLong() + ttlNanos, tags);
+            probation.put(key, entry);
+
+            for (Object tag : tags) {
+                tagged.computeIfAbsent(tag, t -> new HashSet<>()).add(key);
+            }
+
+            while (probation.size() + protectedSegment.size() > maxSize) {
+                LinkedHashMap<K, Entry<V>> segment = probation.isEmpty() ? protectedSegment : probation;
+                Iterator<Map.Entry<K, Entry<V>>> it = segment.entrySet().iterator();
+                Map.Entry<K, Entry<V>> eldest = it.next();
+                it.remove();
+                untag(eldest.getKey(), eldest.getValue());
+                evictions.increment();
+            }
+
+            return true;
+        }
+
+        synchronized void remove(K key) {
+            Entry<V> entry = probation.remove(key);
+
+            if (entry == null) {
+                entry = protectedSegment.remove(key);
+            }
+
+            if (entry != null) {
+                untag(key, entry);
+            }
+        }
+
+        synchronized void removeTagged(Object tag) {
+            Set<K> keys = tagged.get(tag);
+
+            if (keys == null) {
+                return;
+            }
+
+            // remove() updates the index, so iterate over a copy
+            for (K key : new ArrayList<>(keys)) {
+                remove(key);
+            }
+        }
+
+        synchronized void removeIf(BiPredicate<? super K, ? super V> predicate) {
+            removeIf(probation, predicate);
+            removeIf(protectedSegment, predicate);
+        }
+
+        synchronized void clear() {
+            probation.clear();
+            protectedSegment.clear();
+            tagged.clear();
+        }
+
+        synchronized int size() {
+            return probation.size() + protectedSegment.size();
+        }
+
+        private void removeIf(LinkedHashMap<K, Entry<V>> segment, BiPredicate<? super K, ? super V> predicate) {
+            Iterator<Map.Entry<K, Entry<V>>> it = segment.entrySet().iterator();
+
+            while (it.hasNext()) {
+                Map.Entry<K, Entry<V>> entry = it.next();
+
+                if (predicate.test(entry.getKey(), entry.getValue().value)) {
+                    it.remove();
+                    untag(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        private void untag(K key, Entry<V> entry) {
+            for (Object tag : entry.tags) {
+                Set<K> keys = tagged.get(tag);
+
+                if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                    tagged.remove(tag);
+                }
+            }
+        }
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        final long expiresAt;
+        final Object[] tags;
+
+        Entry(V value, long expiresAt, Object[] tags) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.tags = tags;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.authsignal;
+
+import com.authsignal.json.JsonCodec;
+import com.authsignal.model.WebhookEvent;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A compact record of revoked sessions that lets locally validated or cached sessions be checked
+ * for revocation without a network call.
+ *
+ * Revoked access tokens and users are added to Bloom filters, so a miss proves a session was not
+ * revoked through this filter while a hit only means it may have been and should be confirmed
+ * with the API. Filters are kept in generations by expiry time: a revoked token goes into the
+ * generation in which it expires and a revoked user into the one in which every token issued
+ * before the revocation has expired. A whole generation is dropped once its time has passed, so
+ * memory stays fixed however many sessions are revoked.
+ */
+public class SessionRevocationFilter {
+    private static final int GENERATION_COUNT = 8;
+
+    private final long generationMillis;
+    private final long maxLifetimeMillis;
+    private final int bitCount;
+    private final int hashCount;
+    private final AtomicReferenceArray<Generation> generations = new AtomicReferenceArray<>(GENERATION_COUNT);
+    private final LongSupplier clock;
+
+    private final LongAdder revocations = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * @param expectedEntries   the number of revocations each generation is sized for
+     * @param falsePositiveRate the rate of false hits at the expected number of entries
+     * @param maxTokenLifetime  the longest an access token stays valid after it is issued
+     */
+    public SessionRevocationFilter(int expectedEntries, double falsePositiveRate, Duration maxTokenLifetime) {
+        this(expectedEntries, falsePositiveRate, maxTokenLifetime, System::currentTimeMillis);
+    }
+
+    SessionRevocationFilter(int expectedEntries, double falsePositiveRate, Duration maxTokenLifetime,
+            LongSupplier clock) {
+        double bits = -expectedEntries * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+
+        this.bitCount = (int) Math.min(Integer.MAX_VALUE - 63, Math.max(64, (long) Math.ceil(bits)));
+        this.hashCount = Math.max(1, (int) Math.round(bitCount / (double) expectedEntries * Math.log(2)));
+        this.maxLifetimeMillis = maxTokenLifetime.toMillis();
+        // The newest live generation must reach a full token lifetime ahead of the current one
+        this.generationMillis = Math.max(1, (maxLifetimeMillis + GENERATION_COUNT - 2) / (GENERATION_COUNT - 1));
+        this.clock = clock;
+    }
+
+    /**
+     * Records a revoked access token which expires at the given time, in seconds since the epoch.
+     * Tokens with an unknown expiry, passed as zero or less, are kept for the maximum lifetime.
+     */
+    public void revokeToken(String accessToken, long expiresAt) {
+        long now = clock.getAsLong();
+        long expiresAtMillis = expiresAt > 0 ? expiresAt * 1000 : now + maxLifetimeMillis;
+
+        add("token:" + accessToken, Math.min(expiresAtMillis, now + maxLifetimeMillis));
+    }
+
+    /**
+     * Records that every session of a user was revoked. Tokens issued to the user afterwards are
+     * also reported until the maximum token lifetime has passed, and are confirmed by the API.
+     */
+    public void revokeUser(String userId) {
+        add("user:" + userId, clock.getAsLong() + maxLifetimeMillis);
+    }
+
+    /**
+     * Records a revocation delivered as a webhook event. Events with an {@code accessToken} in
+     * their data revoke that token until its {@code exp} claim, otherwise events with a
+     * {@code userId} revoke the user.
+     */
+    public void revoke(WebhookEvent event) {
+        if (event.data == null) {
+            return;
+        }
+
+        String accessToken = event.data.get("accessToken");
+
+        if (accessToken != null) {
+            revokeToken(accessToken, SessionTokenVerifier.readExpiry(JsonCodec.getDefault(), accessToken));
+        } else if (event.data.get("userId") != null) {
+            revokeUser(event.data.get("userId"));
+        }
+    }
+
+    /**
+     * Returns false if the token and user were definitely not revoked, or true if either may have
+     * been. The user id may be null when it is not known.
+     */
+    public boolean mightBeRevoked(String accessToken, String userId) {
+        boolean hit = mightContain("token:" + accessToken) || (userId != null && mightContain("user:" + userId));
+
+        if (hit) {
+            hits.increment();
+        }
+
+        return hit;
+    }
+
+    /**
+     * Returns the number of revocations recorded.
+     */
+    public long getRevocationCount() {
+        return revocations.sum();
+    }
+
+    /**
+     * Returns the number of checks that reported a possible revocation.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    private void add(String key, long expiresAtMillis) {
+        long[] hashes = hash(key);
+        Generation generation = generation(Math.floorDiv(expiresAtMillis - 1, generationMillis) + 1);
+
+        for (int i = 0; i < hashCount; i++) {
+            generation.set(index(hashes, i));
+        }
+
+        revocations.increment();
+    }
+
+    private boolean mightContain(String key) {
+        long[] hashes = null;
+        long current = Math.floorDiv(clock.getAsLong(), generationMillis);
+
+        for (int slot = 0; slot < GENERATION_COUNT; slot++) {
+            Generation generation = generations.get(slot);
+
+            // A generation's epoch is the end of its time span, so it is live until then
+            if (generation == null || generation.epoch <= current) {
+                continue;
+            }
+
+            if (hashes == null) {
+                hashes = hash(key);
+            }
+
+            boolean all = true;
+
+            for (int i = 0; i < hashCount && all; i++) {
+                all = generation.get(index(hashes, i));
+            }
+
+            if (all) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private Generation generation(long epoch) {
+        int slot = (int) Math.floorMod(epoch, (long) GENERATION_COUNT);
+
+        while (true) {
+            Generation generation = generations.get(slot);
+
+            if (generation != null && generation.epoch >= epoch) {
+                return generation;
+            }
+
+            // Replace the expired generation, dropping all of its entries at once
+            Generation fresh = new Generation(epoch, bitCount);
+
+            if (generations.compareAndSet(slot, generation, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    private int index(long[] hashes, int i) {
+        return (int) Math.floorMod(hashes[0] + i * hashes[1], (long) bitCount);
+    }
+
+    /**
+     * Derives the two base hashes for double hashing from a SHA-256 digest, so that raw tokens are
+     * never kept and the probes cannot be steered by crafted input.
+     */
+    private static long[] hash(String key) {
+        try {
+            ByteBuffer digest = ByteBuffer.wrap(
+                    MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8)));
+
+            return new long[] { digest.getLong(), digest.getLong() | 1 };
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static final class Generation {
+        final long epoch;
+        final AtomicLongArray bits;
+
+        Generation(long epoch, int bitCount) {
+            this.epoch = epoch;
+            this.bits = new AtomicLongArray((bitCount + 63) / 64);
+        }
+
+        void set(int index) {
+            long mask = 1L << (index & 63);
+            int word = index >>> 6;
+
+            while (true) {
+                long value = bits.get(word);
+
+                if ((value & mask) != 0 || bits.compareAndSet(word, value, value | mask)) {
+                    return;
+                }
+            }
+        }
+
+        boolean get(int index) {
+            return (bits.get(index >>> 6) & (1L << (index & 63))) != 0;
+        }
+    }
+}
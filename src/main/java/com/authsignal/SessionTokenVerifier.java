@@ -0,0 +1,344 @@
+package com.authsignal;
+
+import com.authsignal.exception.AuthsignalException;
+import com.authsignal.json.JsonCodec;
+import com.authsignal.model.JsonWebKey;
+import com.authsignal.model.JsonWebKeySet;
+import com.authsignal.model.ValidateSessionRequest;
+import com.authsignal.model.ValidateSessionResponse;
+import com.authsignal.model.ValidateSessionUser;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Validates session access tokens in-process against the signing keys published as a JSON Web Key
+ * Set, so that {@link AuthsignalClient#validateSession} does not need a round trip.
+ *
+ * The key set is fetched on first use and refreshed in the background once it is older than the
+ * refresh interval. Tokens signed with a key that is not in the set, or with an algorithm other
+ * than RS256 or ES256, are left to the API: {@link #validate} completes with null for them. So are
+ * tokens from another issuer, tokens typed as something other than an access token, and tokens
+ * without the required scope, so that only tokens known to be session access tokens are trusted.
+ */
+class SessionTokenVerifier {
+    private static final Duration MIN_REFRESH_INTERVAL = Duration.ofSeconds(30);
+    private static final Base64.Decoder BASE64_URL = Base64.getUrlDecoder();
+
+    private final JsonCodec codec;
+    private final Supplier<CompletableFuture<JsonWebKeySet>> keyLoader;
+    private final long refreshNanos;
+    private final String issuer;
+    private final String scope;
+    private final long clockSkewSeconds;
+    private final SingleFlight<String, Map<String, VerificationKey>> refreshes = new SingleFlight<>();
+
+    private volatile Map<String, VerificationKey> keys;
+    private volatile long fetchedAt;
+    private volatile long lastRefreshAttempt;
+
+    /**
+     * @param issuer    the {@code iss} claim that tokens must carry
+     * @param scope     a scope that tokens must list in their {@code scope} claim, or null
+     * @param clockSkew how far {@code exp} and {@code nbf} may be off from this host's clock
+     */
+    SessionTokenVerifier(JsonCodec codec, Supplier<CompletableFuture<JsonWebKeySet>> keyLoader,
+            Duration refreshInterval, String issuer, String scope, Duration clockSkew) {
+        this.codec = codec;
+        this.keyLoader = keyLoader;
+        this.refreshNanos = refreshInterval.toNanos();
+        this.issuer = issuer;
+        this.scope = scope;
+        this.clockSkewSeconds = clockSkew != null ? clockSkew.getSeconds() : 0;
+        this.lastRefreshAttempt = System.nanoTime() - MIN_REFRESH_INTERVAL.toNanos();
+    }
+
+    /**
+     * Validates the request's access token. Completes with the response built from the token's
+     * claims, with null if the token has to be validated by the API instead, or exceptionally
+     * with an {@link AuthsignalException} if the token is invalid or expired.
+     */
+    CompletableFuture<ValidateSessionResponse> validate(ValidateSessionRequest request) {
+        String[] parts = request.accessToken != null ? request.accessToken.split("\\.", -1) : new String[0];
+
+        if (parts.length != 3) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        Map<String, Object> header;
+
+        try {
+            header = codec.fromBytes(BASE64_URL.decode(parts[0]), Map.class);
+        } catch (RuntimeException ex) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        String alg = header != null ? stringClaim(header, "alg") : null;
+        String kid = header != null ? stringClaim(header, "kid") : null;
+        String typ = header != null ? stringClaim(header, "typ") : null;
+
+        if (kid == null || !("RS256".equals(alg) || "ES256".equals(alg)) || !isAccessTokenType(typ)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return currentKeys().handle((currentKeys, ex) -> {
+            VerificationKey key = currentKeys != null ? currentKeys.get(kid) : null;
+
+            if (key == null) {
+                // The key may have been rotated in since the last fetch
+                refreshIfDue();
+                return null;
+            }
+
+            return verify(parts, alg, key, request.clientIds);
+        });
+    }
+
+    /**
+     * Reads a token's {@code exp} claim, in seconds since the epoch, without verifying the token.
+     * Returns zero if the token has no readable expiry.
+     */
+    static long readExpiry(JsonCodec codec, String accessToken) {
+        String[] parts = accessToken != null ? accessToken.split("\\.", -1) : new String[0];
+
+        if (parts.length != 3) {
+            return 0;
+        }
+
+        try {
+            Map<String, Object> claims = codec.fromBytes(BASE64_URL.decode(parts[1]), Map.class);
+            Object exp = claims != null ? claims.get("exp") : null;
+
+            return exp instanceof Number ? ((Number) exp).longValue() : 0;
+        } catch (RuntimeException ex) {
+            return 0;
+        }
+    }
+
+    private ValidateSessionResponse verify(String[] parts, String alg, VerificationKey key, String[] clientIds) {
+        if (key.alg != null && !key.alg.equals(alg)) {
+            throw invalidToken("The access token is invalid.");
+        }
+
+        Map<String, Object> claims;
+
+        try {
+            Signature signature = Signature.getInstance(
+                    "RS256".equals(alg) ? "SHA256withRSA" : "SHA256withECDSAinP1363Format");
+            signature.initVerify(key.publicKey);
+            signature.update((parts[0] + "." + parts[1]).getBytes(StandardCharsets.US_ASCII));
+
+            if (!signature.verify(BASE64_URL.decode(parts[2]))) {
+                throw invalidToken("The access token is invalid.");
+            }
+
+            claims = codec.fromBytes(BASE64_URL.decode(parts[1]), Map.class);
+        } catch (GeneralSecurityException | IllegalArgumentException ex) {
+            throw invalidToken("The access token is invalid.");
+        }
+
+        if (claims == null || !issuer.equals(stringClaim(claims, "iss")) || !hasScope(claims.get("scope"))) {
+            // Signed with a session key but not recognizably a session access token
+            return null;
+        }
+
+        long now = System.currentTimeMillis() / 1000;
+        Number exp = claims.get("exp") instanceof Number ? (Number) claims.get("exp") : null;
+        Number nbf = claims.get("nbf") instanceof Number ? (Number) claims.get("nbf") : null;
+
+        if (exp == null || exp.longValue() <= now - clockSkewSeconds) {
+            throw invalidToken("The access token has expired.");
+        }
+
+        if (nbf != null && nbf.longValue() > now + clockSkewSeconds) {
+            throw invalidToken("The access token is not valid yet.");
+        }
+
+        if (clientIds != null && clientIds.length > 0 && !hasAudience(claims.get("aud"), clientIds)) {
+            throw invalidToken("The access token was not issued for this client.");
+        }
+
+        ValidateSessionUser user = new ValidateSessionUser();
+        user.userId = stringClaim(claims, "sub");
+        user.email = stringClaim(claims, "email");
+        user.phoneNumber = stringClaim(claims, "phoneNumber");
+        user.username = stringClaim(claims, "username");
+        user.displayName = stringClaim(claims, "displayName");
+
+        if (claims.get("custom") instanceof Map) {
+            user.custom = new HashMap<>();
+
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) claims.get("custom")).entrySet()) {
+                user.custom.put(String.valueOf(entry.getKey()),
+                        entry.getValue() != null ? String.valueOf(entry.getValue()) : null);
+            }
+        }
+
+        ValidateSessionResponse response = new ValidateSessionResponse();
+        response.user = user;
+        response.expiresAt = exp.intValue();
+        return response;
+    }
+
+    /**
+     * Returns the cached keys, starting a background refresh if they are stale. Only the first
+     * fetch is waited for; if it fails, tokens go to the API until the next attempt is due.
+     */
+    private CompletableFuture<Map<String, VerificationKey>> currentKeys() {
+        Map<String, VerificationKey> current = keys;
+
+        if (current == null) {
+            CompletableFuture<Map<String, VerificationKey>> pending = refreshIfDue();
+
+            if (pending == null && refreshes.getInFlightCount() > 0) {
+                pending = refresh();
+            }
+
+            return pending != null ? pending : CompletableFuture.completedFuture(null);
+        }
+
+        if (System.nanoTime() - fetchedAt > refreshNanos) {
+            refreshIfDue();
+        }
+
+        return CompletableFuture.completedFuture(current);
+    }
+
+    /**
+     * Starts a refresh unless one was attempted recently, which bounds how often failing or
+     * unknown-key refreshes reach the key endpoint.
+     */
+    private CompletableFuture<Map<String, VerificationKey>> refreshIfDue() {
+        long now = System.nanoTime();
+
+        if (now - lastRefreshAttempt < MIN_REFRESH_INTERVAL.toNanos()) {
+            return null;
+        }
+
+        lastRefreshAttempt = now;
+        return refresh();
+    }
+
+    private CompletableFuture<Map<String, VerificationKey>> refresh() {
+        return refreshes.execute("keys", () -> keyLoader.get().thenApply(keySet -> {
+            Map<String, VerificationKey> loaded = toVerificationKeys(keySet);
+            keys = loaded;
+            fetchedAt = System.nanoTime();
+            return loaded;
+        }));
+    }
+
+    private static Map<String, VerificationKey> toVerificationKeys(JsonWebKeySet keySet) {
+        if (keySet == null || keySet.keys == null) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, VerificationKey> verificationKeys = new HashMap<>();
+
+        for (JsonWebKey key : keySet.keys) {
+            if (key.kid == null || (key.use != null && !key.use.equals("sig"))) {
+                continue;
+            }
+
+            try {
+                PublicKey publicKey = toPublicKey(key);
+
+                if (publicKey != null) {
+                    verificationKeys.put(key.kid, new VerificationKey(publicKey, key.alg));
+                }
+            } catch (GeneralSecurityException | IllegalArgumentException ex) {
+                // Skip keys that cannot be used rather than failing the whole set
+            }
+        }
+
+        return verificationKeys;
+    }
+
+    private static PublicKey toPublicKey(JsonWebKey key) throws GeneralSecurityException {
+        if ("RSA".equals(key.kty) && key.n != null && key.e != null) {
+            return KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(
+                    new BigInteger(1, BASE64_URL.decode(key.n)), new BigInteger(1, BASE64_URL.decode(key.e))));
+        }
+
+        if ("EC".equals(key.kty) && "P-256".equals(key.crv) && key.x != null && key.y != null) {
+            AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+            parameters.init(new ECGenParameterSpec("secp256r1"));
+
+            ECPoint point = new ECPoint(
+                    new BigInteger(1, BASE64_URL.decode(key.x)), new BigInteger(1, BASE64_URL.decode(key.y)));
+
+            return KeyFactory.getInstance("EC").generatePublic(
+                    new ECPublicKeySpec(point, parameters.getParameterSpec(ECParameterSpec.class)));
+        }
+
+        return null;
+    }
+
+    /**
+     * Accepts tokens without a {@code typ} header and those typed as a JWT or as an access token
+     * (RFC 9068), but not other token types signed with the same keys.
+     */
+    private static boolean isAccessTokenType(String typ) {
+        return typ == null || typ.equalsIgnoreCase("JWT") || typ.equalsIgnoreCase("at+jwt")
+                || typ.equalsIgnoreCase("application/at+jwt");
+    }
+
+    private boolean hasScope(Object scopes) {
+        if (scope == null) {
+            return true;
+        }
+
+        return scopes instanceof String && Arrays.asList(((String) scopes).split(" ")).contains(scope);
+    }
+
+    private static boolean hasAudience(Object aud, String[] clientIds) {
+        Collection<?> audiences = aud instanceof Collection ? (Collection<?>) aud : Collections.singletonList(aud);
+
+        for (Object audience : audiences) {
+            if (audience != null && Arrays.asList(clientIds).contains(audience.toString())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static String stringClaim(Map<String, Object> claims, String name) {
+        Object value = claims.get(name);
+        return value instanceof String ? (String) value : null;
+    }
+
+    private static CompletionException invalidToken(String description) {
+        return new CompletionException(new AuthsignalException(401, "invalid_token", description));
+    }
+
+    private static final class VerificationKey {
+        final PublicKey publicKey;
+        final String alg;
+
+        VerificationKey(PublicKey publicKey, String alg) {
+            this.publicKey = publicKey;
+            this.alg = alg;
+        }
+    }
+}
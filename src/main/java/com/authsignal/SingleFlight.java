@@ -0,0 +1,88 @@
+package com.authsignal;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls for the same key onto one in-flight operation.
+ *
+ * The first caller for a key starts the operation and later callers join it until it completes.
+ * Every caller is handed its own dependent future, so cancelling or completing one caller's
+ * future has no effect on the shared operation or on the other callers.
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> operation) {
+        calls.increment();
+
+        CompletableFuture<V> shared = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, shared);
+
+        if (existing != null) {
+            coalesced.increment();
+            return dependent(existing);
+        }
+
+        // Hand out the caller's future before the operation can complete and remove the key
+        CompletableFuture<V> result = dependent(shared);
+
+        try {
+            operation.get().whenComplete((value, ex) -> complete(key, shared, value, ex));
+        } catch (RuntimeException ex) {
+            complete(key, shared, null, ex);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the number of calls made, including coalesced ones.
+     */
+    public long getCallCount() {
+        return calls.sum();
+    }
+
+    /**
+     * Returns the number of calls that joined an operation already in flight.
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Returns the number of operations currently in flight.
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    private void complete(K key, CompletableFuture<V> shared, V value, Throwable ex) {
+        inFlight.remove(key, shared);
+
+        if (ex != null) {
+            shared.completeExceptionally(ex);
+        } else {
+            shared.complete(value);
+        }
+    }
+
+    private static <V> CompletableFuture<V> dependent(CompletableFuture<V> shared) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+
+        shared.whenComplete((value, ex) -> {
+            if (ex != null) {
+                future.completeExceptionally(ex);
+            } else {
+                future.complete(value);
+            }
+        });
+
+        return future;
+    }
+}
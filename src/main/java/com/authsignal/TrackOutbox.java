@@ -0,0 +1,541 @@
+package com.authsignal;
+
+import com.authsignal.exception.AuthsignalException;
+import com.authsignal.json.JsonCodec;
+import com.authsignal.model.TrackAttributes;
+import com.authsignal.model.TrackRequest;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * Sends track calls in the background from a durable local log, so that callers do not wait for
+ * them and they survive Authsignal being briefly unreachable or the process restarting.
+ *
+ * Each enqueued request is given an idempotency key and appended to a memory-mapped log segment
+ * as a record of {@code [length][crc32][state][json]}. Records are then delivered with bounded
+ * concurrency and retried with exponential backoff. A delivered record has its state byte set,
+ * and a segment file is deleted once all of its records are delivered. On startup, records that
+ * were not marked delivered are sent again; the idempotency key makes the replay safe.
+ *
+ * Records are in the operating system's page cache as soon as they are appended, so they survive
+ * the process crashing. Segments are flushed to disk when they fill up and when the outbox is
+ * closed.
+ *
+ * Records that keep failing for a reason other than the API being unreachable or overloaded are
+ * moved aside after {@link TrackOutboxOptions#maxAttempts} attempts, by appending their JSON as
+ * a line to {@code track-failed.ndjson} in the outbox directory.
+ */
+public class TrackOutbox implements AutoCloseable {
+    private static final String SEGMENT_PREFIX = "track-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String FAILED_FILE = "track-failed.ndjson";
+    private static final int HEADER_SIZE = 9;
+    private static final byte PENDING = 0;
+    private static final byte DELIVERED = 1;
+    private static final int RATE_WINDOW_SECONDS = 10;
+
+    private final AuthsignalClient client;
+    private final JsonCodec codec;
+    private final Path directory;
+    private final TrackOutboxOptions options;
+
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private final Queue<Record> ready = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicLong depth = new AtomicLong();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final Object failedFileLock = new Object();
+    private final AtomicLongArray rateCounts = new AtomicLongArray(RATE_WINDOW_SECONDS);
+    private final AtomicLongArray rateSeconds = new AtomicLongArray(RATE_WINDOW_SECONDS);
+
+    private Segment current;
+    private long nextSequence;
+    private volatile boolean closed;
+
+    /**
+     * Opens the outbox in the given directory, creating it if needed, and starts delivering any
+     * records left pending by a previous run.
+     */
+    public TrackOutbox(AuthsignalClient client, Path directory, TrackOutboxOptions options) throws IOException {
+        this.client = client;
+        this.codec = client.getCodec();
+        this.directory = directory;
+        this.options = options;
+
+        Files.createDirectories(directory);
+        recover();
+        drain();
+    }
+
+    public TrackOutbox(AuthsignalClient client, Path directory) throws IOException {
+        this(client, directory, new TrackOutboxOptions());
+    }
+
+    /**
+     * Appends a track call to the log and returns its idempotency key. If the request has no
+     * idempotency key, one is generated and set on its attributes.
+     *
+     * @throws IllegalStateException if the outbox is closed, or is full because its segments
+     *                               already take {@link TrackOutboxOptions#maxDiskBytes}
+     */
+    public String enqueue(TrackRequest request) {
+        if (request.attributes == null) {
+            request.attributes = new TrackAttributes();
+        }
+
+        if (request.attributes.idempotencyKey == null) {
+            request.attributes.idempotencyKey = UUID.randomUUID().toString();
+        }
+
+        byte[] payload = codec.toBytes(request);
+
+        if (payload.length + HEADER_SIZE > options.segmentSize) {
+            throw new IllegalArgumentException("The track request is larger than the outbox segment size.");
+        }
+
+        Record record;
+
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("The outbox has been closed.");
+            }
+
+            try {
+                if (current == null || current.writePosition + HEADER_SIZE + payload.length > options.segmentSize) {
+                    if (getDiskUsageBytes() + options.segmentSize > options.maxDiskBytes) {
+                        throw new IllegalStateException("The outbox is full.");
+                    }
+
+                    roll();
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+
+            record = current.append(payload);
+        }
+
+        depth.incrementAndGet();
+        ready.add(record);
+        drain();
+
+        return request.attributes.idempotencyKey;
+    }
+
+    /**
+     * Returns the number of records not delivered yet, including those being sent or retried.
+     */
+    public long getQueueDepth() {
+        return depth.get();
+    }
+
+    public long getDeliveredCount() {
+        return delivered.sum();
+    }
+
+    /**
+     * Returns the number of records dropped because the API rejected them with a client error.
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Returns the number of records moved aside after failing {@link TrackOutboxOptions#maxAttempts}
+     * times.
+     */
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * Returns the average number of records delivered per second over the last ten seconds.
+     */
+    public double getDrainRate() {
+        long now = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        long count = 0;
+
+        for (int i = 0; i < RATE_WINDOW_SECONDS; i++) {
+            if (now - rateSeconds.get(i) < RATE_WINDOW_SECONDS) {
+                count += rateCounts.get(i);
+            }
+        }
+
+        return count / (double) RATE_WINDOW_SECONDS;
+    }
+
+    /**
+     * Returns the disk space taken by the log segments, which are preallocated at full size.
+     */
+    public long getDiskUsageBytes() {
+        long bytes = 0;
+
+        for (Segment segment : segments) {
+            bytes += segment.buffer.capacity();
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Stops accepting and sending records and flushes the log. Records that are not delivered yet
+     * are sent by the next outbox opened on the same directory.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+
+        for (Segment segment : segments) {
+            segment.buffer.force();
+        }
+    }
+
+    /**
+     * Sends ready records while there is room. Only one thread drains at a time, so a send that
+     * completes straight away drains into the loop already running rather than further down the
+     * stack.
+     */
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+
+        int missed = 1;
+
+        do {
+            while (!closed && inFlight.get() < options.maxConcurrency) {
+                Record record = ready.poll();
+
+                if (record == null) {
+                    break;
+                }
+
+                inFlight.incrementAndGet();
+                send(record);
+            }
+
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void send(Record record) {
+        CompletableFuture<?> future;
+
+        try {
+            future = client.track(codec.fromBytes(record.read(), TrackRequest.class));
+        } catch (RuntimeException ex) {
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(ex);
+            future = failed;
+        }
+
+        future.whenComplete((response, ex) -> {
+            inFlight.decrementAndGet();
+
+            if (ex == null) {
+                complete(record);
+                delivered.increment();
+                recordDelivery();
+            } else if (isRejected(ex)) {
+                complete(record);
+                rejected.increment();
+            } else if (closed || client.isClosed()) {
+                // Left pending for the next outbox opened on the directory
+            } else if (!isUnavailable(ex) && ++record.failures >= options.maxAttempts && moveAside(record)) {
+                complete(record);
+                failed.increment();
+            } else {
+                retry(record);
+            }
+
+            drain();
+        });
+    }
+
+    private void retry(Record record) {
+        long delay = Math.min(options.maxRetryDelay.toMillis(),
+                options.retryDelay.toMillis() << Math.min(record.attempts++, 20));
+
+        CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS).execute(() -> {
+            ready.add(record);
+            drain();
+        });
+    }
+
+    private void complete(Record record) {
+        record.segment.markDelivered(record.offset);
+        depth.decrementAndGet();
+
+        if (record.segment.pending.decrementAndGet() == 0 && record.segment.sealed) {
+            delete(record.segment);
+        }
+    }
+
+    private void recordDelivery() {
+        long second = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        int slot = (int) (second % RATE_WINDOW_SECONDS);
+        long stamp = rateSeconds.get(slot);
+
+        if (stamp != second && rateSeconds.compareAndSet(slot, stamp, second)) {
+            rateCounts.set(slot, 0);
+        }
+
+        rateCounts.incrementAndGet(slot);
+    }
+
+    /**
+     * Appends a record that keeps failing to the failed record file, so it can be inspected and
+     * sent again by hand. Returns false if it could not be written, in which case it stays queued.
+     */
+    private boolean moveAside(Record record) {
+        byte[] payload = record.read();
+        byte[] line = Arrays.copyOf(payload, payload.length + 1);
+        line[payload.length] = '\n';
+
+        synchronized (failedFileLock) {
+            try {
+                Files.write(directory.resolve(FAILED_FILE), line, StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND);
+                return true;
+            } catch (IOException ex) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Network errors, server errors, rate limiting and timeouts mean the API could not take the
+     * record yet, and are retried for as long as it takes.
+     */
+    private static boolean isUnavailable(Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+
+        if (cause instanceof IOException) {
+            return true;
+        }
+
+        if (!(cause instanceof AuthsignalException)) {
+            return false;
+        }
+
+        int statusCode = ((AuthsignalException) cause).getStatusCode();
+
+        return statusCode >= 500 || statusCode == 408 || statusCode == 429;
+    }
+
+    /**
+     * Client errors other than rate limiting and timeouts will fail again on every retry.
+     */
+    private static boolean isRejected(Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+
+        if (!(cause instanceof AuthsignalException)) {
+            return false;
+        }
+
+        int statusCode = ((AuthsignalException) cause).getStatusCode();
+
+        return statusCode >= 400 && statusCode < 500 && statusCode != 408 && statusCode != 429;
+    }
+
+    private void roll() throws IOException {
+        if (current != null) {
+            current.buffer.force();
+            current.sealed = true;
+
+            if (current.pending.get() == 0) {
+                delete(current);
+            }
+        }
+
+        Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, nextSequence++, SEGMENT_SUFFIX));
+        current = Segment.open(path, options.segmentSize);
+        segments.add(current);
+    }
+
+    private void delete(Segment segment) {
+        segments.remove(segment);
+
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException ex) {
+            // The segment is fully delivered, so a leftover file is only replayed as empty
+        }
+    }
+
+    /**
+     * Reopens the segments left by a previous run and queues the records they still hold. New
+     * records always go to a fresh segment.
+     */
+    private void recover() throws IOException {
+        List<Path> paths = new ArrayList<>();
+
+        String glob = SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX;
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob)) {
+            for (Path path : stream) {
+                paths.add(path);
+            }
+        }
+
+        Collections.sort(paths);
+
+        for (Path path : paths) {
+            String name = path.getFileName().toString();
+            String sequence = name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length());
+            nextSequence = Math.max(nextSequence, Long.parseLong(sequence) + 1);
+
+            Segment segment = Segment.open(path, (int) Files.size(path));
+            segment.sealed = true;
+
+            List<Record> records = segment.scan();
+
+            if (records.isEmpty()) {
+                delete(segment);
+                continue;
+            }
+
+            segments.add(segment);
+            depth.addAndGet(records.size());
+            ready.addAll(records);
+        }
+    }
+
+    private static final class Segment {
+        final Path path;
+        final MappedByteBuffer buffer;
+        final AtomicInteger pending = new AtomicInteger();
+        int writePosition;
+        volatile boolean sealed;
+
+        private Segment(Path path, MappedByteBuffer buffer) {
+            this.path = path;
+            this.buffer = buffer;
+        }
+
+        static Segment open(Path path, int size) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                // The mapping stays valid after the channel is closed
+                return new Segment(path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            }
+        }
+
+        /**
+         * Writes a record using absolute offsets only, so appends never disturb concurrent reads.
+         * The length is written last, so a record torn by a crash reads as the end of the log.
+         */
+        Record append(byte[] payload) {
+            int offset = writePosition;
+
+            CRC32 crc = new CRC32();
+            crc.update(payload, 0, payload.length);
+
+            buffer.putInt(offset + 4, (int) crc.getValue());
+            buffer.put(offset + 8, PENDING);
+
+            for (int i = 0; i < payload.length; i++) {
+                buffer.put(offset + HEADER_SIZE + i, payload[i]);
+            }
+
+            buffer.putInt(offset, payload.length);
+
+            writePosition = offset + HEADER_SIZE + payload.length;
+            pending.incrementAndGet();
+
+            return new Record(this, offset);
+        }
+
+        void markDelivered(int offset) {
+            buffer.put(offset + 8, DELIVERED);
+        }
+
+        byte[] read(int offset) {
+            ByteBuffer view = buffer.duplicate();
+            byte[] payload = new byte[view.getInt(offset)];
+
+            view.position(offset + HEADER_SIZE);
+            view.get(payload);
+
+            return payload;
+        }
+
+        /**
+         * Returns the pending records, stopping at the end of the log or at the first record whose
+         * checksum does not match.
+         */
+        List<Record> scan() {
+            List<Record> records = new ArrayList<>();
+            int offset = 0;
+
+            while (offset + HEADER_SIZE <= buffer.capacity()) {
+                int length = buffer.getInt(offset);
+
+                if (length <= 0 || offset + HEADER_SIZE + length > buffer.capacity()) {
+                    break;
+                }
+
+                byte[] payload = read(offset);
+                CRC32 crc = new CRC32();
+                crc.update(payload, 0, payload.length);
+
+                if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                    break;
+                }
+
+                if (buffer.get(offset + 8) == PENDING) {
+                    pending.incrementAndGet();
+                    records.add(new Record(this, offset));
+                }
+
+                offset += HEADER_SIZE + length;
+            }
+
+            writePosition = offset;
+            return records;
+        }
+    }
+
+    private static final class Record {
+        final Segment segment;
+        final int offset;
+        int attempts;
+        int failures;
+
+        Record(Segment segment, int offset) {
+            this.segment = segment;
+            this.offset = offset;
+        }
+
+        byte[] read() {
+            return segment.read(offset);
+        }
+    }
+}
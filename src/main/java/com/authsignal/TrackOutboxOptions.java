@@ -0,0 +1,43 @@
+package com.authsignal;
+
+import java.time.Duration;
+
+/**
+ * Optional settings for {@link TrackOutbox}. Fields left unset keep their defaults.
+ */
+public class TrackOutboxOptions {
+    /**
+     * The size of each log segment file. Segments are preallocated at this size and deleted once
+     * every record in them has been delivered. A single record cannot be larger than a segment.
+     */
+    public int segmentSize = 16 * 1024 * 1024;
+
+    /**
+     * The maximum number of track calls the outbox keeps in flight while draining.
+     */
+    public int maxConcurrency = 8;
+
+    /**
+     * The delay before the first retry of a failed delivery. Each further retry waits twice as
+     * long, up to {@link #maxRetryDelay}.
+     */
+    public Duration retryDelay = Duration.ofMillis(500);
+
+    /**
+     * The longest delay between retries of a failed delivery. Deliveries that fail because the
+     * API is unreachable or overloaded are retried until they succeed.
+     */
+    public Duration maxRetryDelay = Duration.ofMinutes(1);
+
+    /**
+     * The number of attempts made for a record that fails for any other reason, such as a
+     * response that cannot be read, before it is moved aside to the outbox's failed record file.
+     */
+    public int maxAttempts = 10;
+
+    /**
+     * The most disk space the log segments may take. Enqueueing fails once a new segment would be
+     * needed beyond this.
+     */
+    public long maxDiskBytes = 1024L * 1024 * 1024;
+}
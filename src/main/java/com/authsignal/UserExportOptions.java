@@ -0,0 +1,28 @@
+package com.authsignal;
+
+import java.util.function.Consumer;
+
+/**
+ * Optional settings for {@link UserExporter}. Fields left unset keep their defaults.
+ */
+public class UserExportOptions {
+    /**
+     * The maximum number of authenticator lookups kept in flight.
+     */
+    public int maxConcurrency = 16;
+
+    /**
+     * The number of user pages fetched ahead of the one being exported.
+     */
+    public int prefetchPages = 2;
+
+    /**
+     * The size of the buffer rows are gathered in before they are written to the file.
+     */
+    public int bufferSize = 64 * 1024;
+
+    /**
+     * Called after each page of users has been written and checkpointed.
+     */
+    public Consumer<UserExporter> progressListener;
+}
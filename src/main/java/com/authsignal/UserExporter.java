@@ -0,0 +1,239 @@
+package com.authsignal;
+
+import com.authsignal.exception.AuthsignalException;
+import com.authsignal.json.JsonCodec;
+import com.authsignal.model.GetAuthenticatorsRequest;
+import com.authsignal.model.QueryUsersRequest;
+import com.authsignal.model.QueryUsersResponse;
+import com.authsignal.model.QueryUsersResponseUser;
+import com.authsignal.model.UserAuthenticator;
+import com.authsignal.model.UserExportRecord;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Exports users and their authenticators to a newline-delimited JSON file, one
+ * {@link UserExportRecord} per line.
+ *
+ * Pages of users are fetched ahead while the current page is exported, and the authenticators of
+ * each user are looked up with a bounded number of requests in flight. Once every row of a page is
+ * on disk, the next page's cursor and the file length are saved to a checkpoint file beside the
+ * output. An interrupted export run again with the same output therefore truncates any rows
+ * written after the checkpoint and carries on from the next page. The checkpoint is deleted when
+ * the export completes.
+ */
+public class UserExporter {
+    private static final byte NEWLINE = '\n';
+
+    private final AuthsignalClient client;
+    private final JsonCodec codec;
+    private final Path output;
+    private final Path checkpoint;
+    private final UserExportOptions options;
+
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private volatile long startedAt;
+    private volatile long finishedAt;
+
+    public UserExporter(AuthsignalClient client, Path output) {
+        this(client, output, new UserExportOptions());
+    }
+
+    public UserExporter(AuthsignalClient client, Path output, UserExportOptions options) {
+        this.client = client;
+        this.codec = client.getCodec();
+        this.output = output;
+        this.checkpoint = output.resolveSibling(output.getFileName() + ".checkpoint");
+        this.options = options;
+    }
+
+    /**
+     * Exports every user matching the query, resuming from the checkpoint if a previous export to
+     * the same file was interrupted. Blocks until the export completes or fails.
+     */
+    public void export(QueryUsersRequest query) throws IOException, AuthsignalException {
+        rows.reset();
+        bytes.reset();
+        startedAt = System.nanoTime();
+        finishedAt = 0;
+
+        String[] saved = readCheckpoint();
+        long offset = saved != null ? Long.parseLong(saved[0]) : 0;
+        QueryUsersRequest first = saved != null ? UserPageIterator.pageAfter(query, saved[1]) : query;
+
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                UserPageIterator pages = new UserPageIterator(client, first, options.prefetchPages)) {
+            // Drop rows written after the checkpoint, which will be exported again
+            channel.truncate(offset);
+            channel.position(offset);
+
+            ByteBuffer buffer = ByteBuffer.allocate(Math.max(1024, options.bufferSize));
+
+            while (pages.hasNext()) {
+                QueryUsersResponse page = pages.next();
+
+                exportPage(page, channel, buffer);
+                flush(channel, buffer);
+
+                if (UserPageIterator.isLastPage(page)) {
+                    break;
+                }
+
+                channel.force(false);
+                writeCheckpoint(channel.position(), page.lastEvaluatedUserId);
+
+                if (options.progressListener != null) {
+                    options.progressListener.accept(this);
+                }
+            }
+
+            channel.force(false);
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof AuthsignalException) {
+                throw (AuthsignalException) ex.getCause();
+            }
+
+            throw ex;
+        } finally {
+            finishedAt = System.nanoTime();
+        }
+
+        Files.deleteIfExists(checkpoint);
+
+        if (options.progressListener != null) {
+            options.progressListener.accept(this);
+        }
+    }
+
+    /**
+     * Returns the number of rows written by the current or last export.
+     */
+    public long getRowCount() {
+        return rows.sum();
+    }
+
+    /**
+     * Returns the number of bytes written by the current or last export, excluding any rows kept
+     * from before a resume.
+     */
+    public long getBytesWritten() {
+        return bytes.sum();
+    }
+
+    /**
+     * Returns the average number of rows written per second since the export started.
+     */
+    public double getRowsPerSecond() {
+        long start = startedAt;
+
+        if (start == 0) {
+            return 0;
+        }
+
+        long end = finishedAt != 0 ? finishedAt : System.nanoTime();
+        return end > start ? rows.sum() * 1e9 / (end - start) : 0;
+    }
+
+    private void exportPage(QueryUsersResponse page, FileChannel channel, ByteBuffer buffer) throws IOException {
+        if (page.users == null) {
+            return;
+        }
+
+        ArrayDeque<CompletableFuture<UserExportRecord>> window = new ArrayDeque<>();
+        int maxConcurrency = Math.max(1, options.maxConcurrency);
+
+        // Rows are written in page order, with up to maxConcurrency lookups running ahead
+        for (QueryUsersResponseUser user : page.users) {
+            if (window.size() >= maxConcurrency) {
+                write(window.poll().join(), channel, buffer);
+            }
+
+            window.add(lookup(user));
+        }
+
+        while (!window.isEmpty()) {
+            write(window.poll().join(), channel, buffer);
+        }
+    }
+
+    private CompletableFuture<UserExportRecord> lookup(QueryUsersResponseUser user) {
+        GetAuthenticatorsRequest request = new GetAuthenticatorsRequest();
+        request.userId = user.userId;
+
+        return client.getAuthenticators(request).thenApply(authenticators -> {
+            UserExportRecord record = new UserExportRecord();
+            record.user = user;
+            record.authenticators = authenticators != null ? authenticators : new UserAuthenticator[0];
+            return record;
+        });
+    }
+
+    private void write(UserExportRecord record, FileChannel channel, ByteBuffer buffer) throws IOException {
+        byte[] json = codec.toBytes(record);
+
+        if (buffer.remaining() < json.length + 1) {
+            flush(channel, buffer);
+        }
+
+        if (buffer.remaining() < json.length + 1) {
+            // A row larger than the buffer is written straight to the channel
+            writeFully(channel, ByteBuffer.wrap(json));
+            writeFully(channel, ByteBuffer.wrap(new byte[] { NEWLINE }));
+        } else {
+            buffer.put(json).put(NEWLINE);
+        }
+
+        rows.increment();
+        bytes.add(json.length + 1);
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        writeFully(channel, buffer);
+        buffer.clear();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private String[] readCheckpoint() throws IOException {
+        if (!Files.exists(checkpoint)) {
+            return null;
+        }
+
+        List<String> lines = Files.readAllLines(checkpoint, StandardCharsets.UTF_8);
+
+        if (lines.size() < 2) {
+            throw new IOException("The export checkpoint " + checkpoint + " is malformed.");
+        }
+
+        return new String[] { lines.get(0), lines.get(1) };
+    }
+
+    /**
+     * Replaces the checkpoint in one step, so an interruption leaves either the old or new one.
+     */
+    private void writeCheckpoint(long offset, String lastEvaluatedUserId) throws IOException {
+        Path temp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        String content = offset + "\n" + lastEvaluatedUserId + "\n";
+
+        Files.write(temp, content.getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,115 @@
+package com.authsignal;
+
+import com.authsignal.model.QueryUsersRequest;
+import com.authsignal.model.QueryUsersResponse;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Iterates over the pages of a user query, following {@code lastEvaluatedUserId} from one page to
+ * the next.
+ *
+ * Up to {@code prefetchPages} pages after the one being read are requested in the background, each
+ * as soon as the page before it arrives, so at most that many pages plus the current one are held.
+ * A failed request is thrown from {@link #hasNext()} as a {@link java.util.concurrent.CompletionException}.
+ */
+final class UserPageIterator implements Iterator<QueryUsersResponse>, AutoCloseable {
+    private final AuthsignalClient client;
+    private final QueryUsersRequest request;
+    private final ArrayDeque<CompletableFuture<QueryUsersResponse>> pages = new ArrayDeque<>();
+    private CompletableFuture<QueryUsersResponse> tail;
+    private QueryUsersResponse next;
+    private boolean done;
+
+    UserPageIterator(AuthsignalClient client, QueryUsersRequest request, int prefetchPages) {
+        this.client = client;
+        this.request = request;
+        this.tail = client.queryUsers(request);
+
+        pages.add(tail);
+
+        while (pages.size() < Math.max(1, prefetchPages)) {
+            fetchAfterTail();
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) {
+            return true;
+        }
+
+        if (done) {
+            return false;
+        }
+
+        CompletableFuture<QueryUsersResponse> page = pages.poll();
+
+        // Keep the same number of pages in flight while this one is read
+        fetchAfterTail();
+
+        try {
+            next = page.join();
+        } catch (RuntimeException ex) {
+            close();
+            throw ex;
+        }
+
+        if (next == null) {
+            close();
+        }
+
+        return next != null;
+    }
+
+    @Override
+    public QueryUsersResponse next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        QueryUsersResponse page = next;
+        next = null;
+        return page;
+    }
+
+    /**
+     * Stops fetching further pages.
+     */
+    @Override
+    public void close() {
+        done = true;
+
+        for (CompletableFuture<QueryUsersResponse> page : pages) {
+            page.cancel(false);
+        }
+
+        pages.clear();
+    }
+
+    private void fetchAfterTail() {
+        tail = tail.thenCompose(previous -> isLastPage(previous)
+                ? CompletableFuture.<QueryUsersResponse>completedFuture(null)
+                : client.queryUsers(pageAfter(request, previous.lastEvaluatedUserId)));
+
+        pages.add(tail);
+    }
+
+    static QueryUsersRequest pageAfter(QueryUsersRequest request, String lastEvaluatedUserId) {
+        QueryUsersRequest page = new QueryUsersRequest();
+        page.username = request.username;
+        page.email = request.email;
+        page.phoneNumber = request.phoneNumber;
+        page.token = request.token;
+        page.limit = request.limit;
+        page.lastEvaluatedUserId = lastEvaluatedUserId;
+        return page;
+    }
+
+    static boolean isLastPage(QueryUsersResponse page) {
+        return page == null || page.lastEvaluatedUserId == null || page.users == null || page.users.length == 0;
+    }
+}
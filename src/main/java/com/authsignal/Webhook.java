@@ -1,117 +1,550 @@
 package com.authsignal;
 
+import com.authsignal.json.JsonCodec;
 import com.authsignal.model.WebhookEvent;
-import com.google.gson.Gson;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 
 public class Webhook {
     private static final int DEFAULT_TOLERANCE = 5;
+    private static final int DEFAULT_MAX_BODY_BYTES = 1024 * 1024;
+    private static final int STREAM_CHUNK_SIZE = 8192;
+    private static final int STREAM_BATCH_PER_THREAD = 256;
     private static final String VERSION = "v2";
-    private final String apiSecretKey;
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private final SecretKeySpec secretKey;
+    private final JsonCodec codec;
+    private volatile WebhookReplayCache replayCache;
+    private final List<Consumer<WebhookEvent>> listeners = new CopyOnWriteArrayList<>();
+
+    // Created on the first parallel batch, with daemon threads that exit once idle
+    private volatile ExecutorService verifyExecutor;
+
+    // Mac instances are not thread-safe, so each thread keeps one initialized with the key
+    private final ThreadLocal<Mac> mac = ThreadLocal.withInitial(this::createMac);
+
+    public Webhook(String apiSecretKey, JsonCodec codec) {
+        this.secretKey = new SecretKeySpec(apiSecretKey.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+        this.codec = codec;
+    }
 
     public Webhook(String apiSecretKey) {
-        this.apiSecretKey = apiSecretKey;
+        this(apiSecretKey, JsonCodec.getDefault());
+    }
+
+    /**
+     * Remembers verified events in the given cache so that redeliveries are reported by
+     * {@link WebhookResult#isDuplicate()}. The {@code constructEvent} methods reject a redelivery
+     * with {@link FailureReason#DUPLICATE} instead. Pass null to stop detecting duplicates.
+     */
+    public void setReplayCache(WebhookReplayCache replayCache) {
+        this.replayCache = replayCache;
+    }
+
+    public WebhookReplayCache getReplayCache() {
+        return replayCache;
+    }
+
+    /**
+     * Registers a listener which is called on the verifying thread with every event that passes
+     * verification, including redeliveries. Listeners should return quickly.
+     */
+    public void addListener(Consumer<WebhookEvent> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<WebhookEvent> listener) {
+        listeners.remove(listener);
     }
 
     public WebhookEvent constructEvent(String payload, String signature, int tolerance)
             throws InvalidSignatureException {
-        SignatureHeaderData parsedSignature = parseSignature(signature);
+        byte[] digest = verify(ByteBuffer.wrap(payload.getBytes(StandardCharsets.UTF_8)), signature, tolerance);
 
-        long secondsSinceEpoch = System.currentTimeMillis() / 1000;
+        WebhookEvent event = codec.fromJson(payload, WebhookEvent.class);
 
-        if (tolerance > 0 && parsedSignature.timestamp < secondsSinceEpoch - tolerance * 60) {
-            throw new InvalidSignatureException("Timestamp is outside the tolerance zone.");
-        }
+        return accept(recordDelivery(digest, event));
+    }
+
+    public WebhookEvent constructEvent(String payload, String signature) throws InvalidSignatureException {
+        return constructEvent(payload, signature, DEFAULT_TOLERANCE);
+    }
+
+    /**
+     * Verifies and decodes a raw UTF-8 request body without converting it to a String first.
+     */
+    public WebhookEvent constructEvent(byte[] payload, String signature, int tolerance)
+            throws InvalidSignatureException {
+        return accept(verifyAndDecode(payload, signature, tolerance));
+    }
 
-        String hmacContent = parsedSignature.timestamp + "." + payload;
+    public WebhookEvent constructEvent(byte[] payload, String signature) throws InvalidSignatureException {
+        return constructEvent(payload, signature, DEFAULT_TOLERANCE);
+    }
 
-        String computedSignature = computeHmac(hmacContent, apiSecretKey);
+    /**
+     * Verifies and decodes the remaining bytes of a raw UTF-8 request body. The buffer's position
+     * is left unchanged.
+     */
+    public WebhookEvent constructEvent(ByteBuffer payload, String signature, int tolerance)
+            throws InvalidSignatureException {
+        byte[] digest = verify(payload.duplicate(), signature, tolerance);
 
-        boolean match = parsedSignature.signatures.stream().anyMatch(sig -> sig.equals(computedSignature));
+        WebhookEvent event;
 
-        if (!match) {
-            throw new InvalidSignatureException("Signature mismatch.");
+        try {
+            event = codec.fromStream(new ByteBufferInputStream(payload.duplicate()), WebhookEvent.class);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
         }
 
-        return new Gson().fromJson(payload, WebhookEvent.class);
+        return accept(recordDelivery(digest, event));
     }
 
-    public WebhookEvent constructEvent(String payload, String signature) throws InvalidSignatureException {
+    public WebhookEvent constructEvent(ByteBuffer payload, String signature) throws InvalidSignatureException {
         return constructEvent(payload, signature, DEFAULT_TOLERANCE);
     }
 
-    private SignatureHeaderData parseSignature(String value) throws InvalidSignatureException {
+    /**
+     * Verifies and decodes a request body read from a stream, such as a servlet input stream.
+     *
+     * The signature header and timestamp are checked before the body is read. The body is then
+     * read in chunks, each fed to the HMAC as it arrives, and is only decoded once the signature
+     * matches. Bodies larger than {@code maxBodyBytes} are rejected without being read further.
+     */
+    public WebhookEvent constructEvent(InputStream payload, String signature, int tolerance, int maxBodyBytes)
+            throws InvalidSignatureException, IOException {
+        SignatureHeaderData parsedSignature = parseHeader(signature, tolerance);
+
+        Mac hmac = startHmac(parsedSignature.timestamp);
+
+        byte[] body = new byte[Math.min(maxBodyBytes, STREAM_CHUNK_SIZE)];
+        int length = 0;
+        byte[] digest;
+
+        try {
+            while (true) {
+                if (length == body.length) {
+                    if (length >= maxBodyBytes) {
+                        if (payload.read() == -1) {
+                            break;
+                        }
+
+                        throw new InvalidSignatureException(FailureReason.PAYLOAD_TOO_LARGE,
+                                "Payload exceeds the maximum size.");
+                    }
+
+                    body = Arrays.copyOf(body, (int) Math.min(maxBodyBytes, length * 2L));
+                }
+
+                int count = payload.read(body, length, body.length - length);
+
+                if (count == -1) {
+                    break;
+                }
+
+                hmac.update(body, length, count);
+                length += count;
+            }
+
+            digest = hmac.doFinal();
+        } finally {
+            // Leave the thread's Mac clean if the body could not be read in full
+            hmac.reset();
+        }
+
+        match(parsedSignature, digest);
+
+        WebhookEvent event = codec.fromStream(new ByteBufferInputStream(ByteBuffer.wrap(body, 0, length)),
+                WebhookEvent.class);
+
+        return accept(recordDelivery(digest, event));
+    }
+
+    public WebhookEvent constructEvent(InputStream payload, String signature)
+            throws InvalidSignatureException, IOException {
+        return constructEvent(payload, signature, DEFAULT_TOLERANCE, DEFAULT_MAX_BODY_BYTES);
+    }
+
+    /**
+     * Verifies and decodes a single event without throwing. Malformed JSON is reported as an
+     * {@link FailureReason#INVALID_PAYLOAD} failure.
+     */
+    public WebhookResult verifyEvent(WebhookPayload payload, int tolerance) {
+        try {
+            return verifyAndDecode(payload.body, payload.signature, tolerance);
+        } catch (InvalidSignatureException ex) {
+            return WebhookResult.invalid(ex);
+        } catch (RuntimeException ex) {
+            return WebhookResult.invalid(
+                    new InvalidSignatureException(FailureReason.INVALID_PAYLOAD, "Payload is not a valid event.", ex));
+        }
+    }
+
+    public WebhookResult verifyEvent(WebhookPayload payload) {
+        return verifyEvent(payload, DEFAULT_TOLERANCE);
+    }
+
+    /**
+     * Verifies and decodes a batch of events in parallel. Every payload gets a result, in the
+     * same order as the input, so one bad signature does not stop the rest of the batch.
+     *
+     * The batch runs on a thread pool kept by this Webhook, so its threads and their HMAC
+     * instances are reused from one batch to the next.
+     *
+     * @param parallelism the number of threads to verify on, or 1 to verify on the calling thread
+     */
+    public List<WebhookResult> constructEvents(List<WebhookPayload> payloads, int tolerance, int parallelism) {
+        if (parallelism <= 1 || payloads.size() <= 1) {
+            return payloads.stream().map(payload -> verifyEvent(payload, tolerance)).collect(Collectors.toList());
+        }
+
+        return constructEvents(payloads, tolerance, parallelism, verifyExecutor());
+    }
+
+    /**
+     * Verifies and decodes a batch of events, split into {@code parallelism} contiguous slices.
+     * The calling thread verifies the first slice and the executor runs the others.
+     */
+    public List<WebhookResult> constructEvents(List<WebhookPayload> payloads, int tolerance, int parallelism,
+            Executor executor) {
+        int size = payloads.size();
+        int slices = Math.max(1, Math.min(parallelism, size));
+        WebhookResult[] results = new WebhookResult[size];
+        CompletableFuture<?>[] pending = new CompletableFuture<?>[slices - 1];
+
+        for (int i = 1; i < slices; i++) {
+            int from = (int) ((long) size * i / slices);
+            int to = (int) ((long) size * (i + 1) / slices);
+
+            pending[i - 1] = CompletableFuture.runAsync(() -> verifySlice(payloads, tolerance, results, from, to),
+                    executor);
+        }
+
+        verifySlice(payloads, tolerance, results, 0, size / slices);
+
         try {
-            long timestamp = getTimestamp(value);
-            List<String> signatures = getSignatures(value);
+            CompletableFuture.allOf(pending).join();
+        } catch (CompletionException ex) {
+            throw new IllegalStateException("Failed to verify webhook events", ex.getCause());
+        }
+
+        return new ArrayList<>(Arrays.asList(results));
+    }
 
-            if (timestamp == -1 || signatures.isEmpty()) {
-                throw new RuntimeException();
+    /**
+     * Verifies a stream of payloads in batches of a bounded size, so that the stream is not
+     * collected in full before verification starts.
+     */
+    public List<WebhookResult> constructEvents(Stream<WebhookPayload> payloads, int tolerance, int parallelism) {
+        int batchSize = Math.max(1, parallelism) * STREAM_BATCH_PER_THREAD;
+        List<WebhookResult> results = new ArrayList<>();
+        List<WebhookPayload> batch = new ArrayList<>(batchSize);
+        Iterator<WebhookPayload> it = payloads.iterator();
+
+        while (it.hasNext()) {
+            batch.add(it.next());
+
+            if (batch.size() == batchSize || !it.hasNext()) {
+                results.addAll(constructEvents(batch, tolerance, parallelism));
+                batch.clear();
             }
+        }
+
+        return results;
+    }
+
+    public List<WebhookResult> constructEvents(List<WebhookPayload> payloads) {
+        return constructEvents(payloads, DEFAULT_TOLERANCE, Runtime.getRuntime().availableProcessors());
+    }
+
+    private void verifySlice(List<WebhookPayload> payloads, int tolerance, WebhookResult[] results, int from,
+            int to) {
+        for (int i = from; i < to; i++) {
+            results[i] = verifyEvent(payloads.get(i), tolerance);
+        }
+    }
+
+    private ExecutorService verifyExecutor() {
+        ExecutorService executor = verifyExecutor;
+
+        if (executor == null) {
+            synchronized (this) {
+                executor = verifyExecutor;
 
-            return new SignatureHeaderData(signatures, timestamp);
-        } catch (Exception e) {
-            throw new InvalidSignatureException("Signature format is invalid.");
+                if (executor == null) {
+                    executor = Executors.newCachedThreadPool(runnable -> {
+                        Thread thread = new Thread(runnable, "authsignal-webhook-verify");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    verifyExecutor = executor;
+                }
+            }
         }
+
+        return executor;
     }
 
-    private static long getTimestamp(String header) {
-        String[] items = header.split(",", -1);
+    private WebhookResult verifyAndDecode(byte[] payload, String signature, int tolerance)
+            throws InvalidSignatureException {
+        byte[] digest = verify(ByteBuffer.wrap(payload), signature, tolerance);
+
+        WebhookEvent event = codec.fromBytes(payload, WebhookEvent.class);
 
-        for (String item : items) {
-            String[] itemParts = item.split("=", 2);
-            if (itemParts[0].equals("t")) {
-                return Long.parseLong(itemParts[1]);
+        return recordDelivery(digest, event);
+    }
+
+    /**
+     * Notifies the listeners of a verified delivery and records it in the replay cache, if there
+     * is one. The result tells whether it was seen before.
+     */
+    private WebhookResult recordDelivery(byte[] digest, WebhookEvent event) {
+        if (event != null) {
+            for (Consumer<WebhookEvent> listener : listeners) {
+                listener.accept(event);
             }
         }
 
-        return -1;
+        WebhookReplayCache cache = replayCache;
+
+        if (cache == null) {
+            return WebhookResult.valid(event, false);
+        }
+
+        String key = cache.getKeyStrategy() == WebhookReplayCache.KeyStrategy.EVENT_ID && event != null
+                && event.id != null
+                        ? event.id
+                        : Base64.getEncoder().encodeToString(digest);
+
+        return cache.isDuplicate(key) ? WebhookResult.valid(event, true) : WebhookResult.recorded(event, cache, key);
+    }
+
+    /**
+     * Returns the event of a delivery seen for the first time. A redelivery found in the replay
+     * cache is rejected, as {@code constructEvent} has no other way to report it.
+     */
+    private static WebhookEvent accept(WebhookResult result) throws InvalidSignatureException {
+        if (result.isDuplicate()) {
+            throw new InvalidSignatureException(FailureReason.DUPLICATE, "Event was already delivered.");
+        }
+
+        return result.getEvent();
+    }
+
+    /**
+     * Checks the signature header against the payload and returns the computed digest.
+     */
+    private byte[] verify(ByteBuffer payload, String signature, int tolerance) throws InvalidSignatureException {
+        SignatureHeaderData parsedSignature = parseHeader(signature, tolerance);
+
+        Mac hmac = startHmac(parsedSignature.timestamp);
+        hmac.update(payload);
+
+        return match(parsedSignature, hmac.doFinal());
+    }
+
+    /**
+     * Parses the signature header and checks its timestamp, so that stale or malformed requests
+     * are rejected before any of the payload is read.
+     */
+    private static SignatureHeaderData parseHeader(String signature, int tolerance) throws InvalidSignatureException {
+        SignatureHeaderData parsedSignature = parseSignature(signature);
+
+        long secondsSinceEpoch = System.currentTimeMillis() / 1000;
+
+        if (tolerance > 0 && parsedSignature.timestamp < secondsSinceEpoch - tolerance * 60) {
+            throw new InvalidSignatureException(FailureReason.TIMESTAMP_OUTSIDE_TOLERANCE,
+                    "Timestamp is outside the tolerance zone.");
+        }
+
+        return parsedSignature;
+    }
+
+    private static byte[] match(SignatureHeaderData parsedSignature, byte[] computedSignature)
+            throws InvalidSignatureException {
+        boolean match = false;
+
+        // Compare every signature in constant time so timing reveals nothing about which matched
+        for (byte[] sig : parsedSignature.signatures) {
+            match |= MessageDigest.isEqual(sig, computedSignature);
+        }
+
+        if (!match) {
+            throw new InvalidSignatureException(FailureReason.SIGNATURE_MISMATCH, "Signature mismatch.");
+        }
+
+        return computedSignature;
     }
 
-    private static List<String> getSignatures(String header) {
-        List<String> signatures = new ArrayList<String>();
-        String[] items = header.split(",", -1);
+    /**
+     * Parses a header of the form {@code t=<timestamp>,v2=<signature>[,v2=<signature>...]} in a
+     * single pass without splitting it into intermediate strings.
+     */
+    private static SignatureHeaderData parseSignature(String value) throws InvalidSignatureException {
+        if (value == null || value.isEmpty()) {
+            throw new InvalidSignatureException(FailureReason.INVALID_FORMAT, "Signature format is invalid.");
+        }
+
+        long timestamp = -1;
+        List<byte[]> signatures = new ArrayList<byte[]>(2);
+
+        try {
+            int start = 0;
+            int length = value.length();
+
+            while (start <= length) {
+                int end = value.indexOf(',', start);
+
+                if (end == -1) {
+                    end = length;
+                }
+
+                int separator = value.indexOf('=', start);
 
-        for (String item : items) {
-            String[] itemParts = item.split("=", 2);
-            if (itemParts[0].equals(VERSION)) {
-                signatures.add(itemParts[1]);
+                if (separator != -1 && separator < end) {
+                    if (separator - start == 1 && value.charAt(start) == 't' && timestamp == -1) {
+                        timestamp = Long.parseLong(value.substring(separator + 1, end));
+                    } else if (value.startsWith(VERSION, start) && separator - start == VERSION.length()) {
+                        signatures.add(decodeSignature(value.substring(separator + 1, end)));
+                    }
+                }
+
+                start = end + 1;
             }
+        } catch (NumberFormatException e) {
+            throw new InvalidSignatureException(FailureReason.INVALID_FORMAT, "Signature format is invalid.");
         }
 
-        return signatures;
+        if (timestamp == -1 || signatures.isEmpty()) {
+            throw new InvalidSignatureException(FailureReason.INVALID_FORMAT, "Signature format is invalid.");
+        }
+
+        return new SignatureHeaderData(signatures, timestamp);
+    }
+
+    /**
+     * Decodes an unpadded Base64 signature. Malformed signatures decode to an empty array so they
+     * never match, rather than failing verification against the other signatures in the header.
+     */
+    private static byte[] decodeSignature(String signature) {
+        try {
+            return Base64.getDecoder().decode(signature);
+        } catch (IllegalArgumentException e) {
+            return new byte[0];
+        }
+    }
+
+    /**
+     * Returns this thread's Mac with the signed prefix "<timestamp>." already fed to it. The
+     * payload is fed next, in one or more parts.
+     */
+    private Mac startHmac(long timestamp) {
+        Mac hmac = mac.get();
+
+        hmac.update(Long.toString(timestamp).getBytes(StandardCharsets.US_ASCII));
+        hmac.update((byte) '.');
+
+        return hmac;
     }
 
-    private String computeHmac(String data, String key) {
+    private Mac createMac() {
         try {
-            Mac mac = Mac.getInstance("HmacSHA256");
-            SecretKeySpec secretKeySpec = new SecretKeySpec(key.getBytes(), "HmacSHA256");
-            mac.init(secretKeySpec);
-            byte[] hmacBytes = mac.doFinal(data.getBytes());
-            return Base64.getEncoder().encodeToString(hmacBytes).replace("=", "");
-        } catch (Exception e) {
+            Mac hmac = Mac.getInstance(HMAC_ALGORITHM);
+            hmac.init(secretKey);
+            return hmac;
+        } catch (GeneralSecurityException e) {
             throw new RuntimeException("Failed to compute HMAC", e);
         }
     }
 
     private static class SignatureHeaderData {
-        public List<String> signatures;
+        public List<byte[]> signatures;
         public long timestamp;
 
-        public SignatureHeaderData(List<String> signatures, long timestamp) {
+        public SignatureHeaderData(List<byte[]> signatures, long timestamp) {
             this.signatures = signatures;
             this.timestamp = timestamp;
         }
     }
 
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+
+    /**
+     * Why a webhook event was rejected.
+     */
+    public enum FailureReason {
+        INVALID_FORMAT,
+        TIMESTAMP_OUTSIDE_TOLERANCE,
+        SIGNATURE_MISMATCH,
+        INVALID_PAYLOAD,
+        PAYLOAD_TOO_LARGE,
+        DUPLICATE
+    }
+
     public static class InvalidSignatureException extends Exception {
+        private final FailureReason reason;
+
         public InvalidSignatureException(String message) {
+            this(null, message);
+        }
+
+        public InvalidSignatureException(FailureReason reason, String message) {
             super(message);
+            this.reason = reason;
+        }
+
+        public InvalidSignatureException(FailureReason reason, String message, Throwable cause) {
+            super(message, cause);
+            this.reason = reason;
+        }
+
+        public FailureReason getReason() {
+            return reason;
         }
     }
 }
@@ -0,0 +1,368 @@
+package com.authsignal;
+
+import com.authsignal.model.WebhookEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Verifies webhook payloads and hands the events to handlers registered per event type.
+ *
+ * Events are queued onto a fixed number of worker lanes, each with its own bounded queue and
+ * thread. Events for the same tenant and user always go to the same lane, so they are handled in
+ * the order they were dispatched. When a lane's queue is full the event is rejected with a
+ * retryable status instead of being buffered, so that Authsignal delivers it again later.
+ */
+public class WebhookDispatcher implements AutoCloseable {
+    /**
+     * Handles verified events of one type. Handlers run on the dispatcher's worker threads.
+     */
+    public interface Handler {
+        void handle(WebhookEvent event) throws Exception;
+    }
+
+    /**
+     * Called on the worker thread when a handler fails. The delivery was already acknowledged,
+     * so this is where a failed event can be logged or moved to a dead-letter store.
+     */
+    public interface ErrorHandler {
+        void onError(WebhookEvent event, Throwable error);
+    }
+
+    /**
+     * The outcome of dispatching a payload, with the HTTP status to answer the delivery with.
+     */
+    public enum Status {
+        /**
+         * The event was queued for its handler.
+         */
+        ACCEPTED(202),
+
+        /**
+         * The event was already delivered within the replay window and was not queued again.
+         */
+        DUPLICATE(200),
+
+        /**
+         * No handler is registered for the event type.
+         */
+        UNHANDLED(200),
+
+        /**
+         * The payload failed verification or did not contain an event.
+         */
+        INVALID(400),
+
+        /**
+         * The event's queue is full or the dispatcher is closed. The delivery should be retried.
+         */
+        REJECTED(503);
+
+        private final int httpStatus;
+
+        Status(int httpStatus) {
+            this.httpStatus = httpStatus;
+        }
+
+        public int getHttpStatus() {
+            return httpStatus;
+        }
+
+        public boolean isRetryable() {
+            return this == REJECTED;
+        }
+    }
+
+    /**
+     * Latency and outcome counters for the handler of one event type.
+     */
+    public static class HandlerStats {
+        private final LongAdder handled = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos, boolean success) {
+            handled.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+
+            if (!success) {
+                failed.increment();
+            }
+        }
+
+        public long getHandledCount() {
+            return handled.sum();
+        }
+
+        public long getFailedCount() {
+            return failed.sum();
+        }
+
+        public long getAverageLatencyNanos() {
+            long count = handled.sum();
+            return count > 0 ? totalNanos.sum() / count : 0;
+        }
+
+        public long getMaxLatencyNanos() {
+            return maxNanos.get();
+        }
+    }
+
+    private static final Task STOP = new Task(null, null, null);
+    private static final ErrorHandler IGNORE_ERRORS = (event, error) -> {
+    };
+
+    private final Webhook webhook;
+    private final Map<String, Handler> handlers = new ConcurrentHashMap<>();
+    private final Map<String, HandlerStats> stats = new ConcurrentHashMap<>();
+    private final List<Lane> lanes;
+    private final LongAdder rejected = new LongAdder();
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private volatile ErrorHandler errorHandler = IGNORE_ERRORS;
+
+    // Guarded by closeLock
+    private boolean closed;
+
+    /**
+     * @param workers       the number of worker lanes, each with its own thread
+     * @param queueCapacity the number of events each lane can hold before rejecting
+     */
+    public WebhookDispatcher(Webhook webhook, int workers, int queueCapacity) {
+        this.webhook = webhook;
+        this.lanes = new ArrayList<>(workers);
+
+        for (int i = 0; i < workers; i++) {
+            Lane lane = new Lane(this, queueCapacity, "authsignal-webhook-" + i);
+            lanes.add(lane);
+            lane.thread.start();
+        }
+    }
+
+    /**
+     * Registers the handler for an event type, replacing any handler already registered for it.
+     */
+    public WebhookDispatcher on(String eventType, Handler handler) {
+        handlers.put(eventType, handler);
+        stats.putIfAbsent(eventType, new HandlerStats());
+        return this;
+    }
+
+    /**
+     * Sets the callback for events whose handler failed, replacing any callback already set.
+     * Failures are otherwise only counted in {@link HandlerStats#getFailedCount()}.
+     */
+    public WebhookDispatcher onError(ErrorHandler handler) {
+        this.errorHandler = handler != null ? handler : IGNORE_ERRORS;
+        return this;
+    }
+
+    /**
+     * Verifies a payload and queues its event for the registered handler.
+     */
+    public Status dispatch(WebhookPayload payload, int tolerance) {
+        return dispatch(webhook.verifyEvent(payload, tolerance));
+    }
+
+    private Status dispatch(WebhookResult result) {
+        if (!result.isValid()) {
+            return Status.INVALID;
+        }
+
+        if (result.isDuplicate()) {
+            return Status.DUPLICATE;
+        }
+
+        Status status = dispatch(result.getEvent());
+
+        // A redelivery of an event that was not queued must not be mistaken for a duplicate
+        if (status != Status.ACCEPTED) {
+            result.forgetDelivery();
+        }
+
+        return status;
+    }
+
+    public Status dispatch(WebhookPayload payload) {
+        return dispatch(webhook.verifyEvent(payload));
+    }
+
+    /**
+     * Queues an event that has already been verified.
+     */
+    public Status dispatch(WebhookEvent event) {
+        if (event == null) {
+            return Status.INVALID;
+        }
+
+        Handler handler = event.type != null ? handlers.get(event.type) : null;
+
+        if (handler == null) {
+            return Status.UNHANDLED;
+        }
+
+        Lane lane = lanes.get(Math.floorMod(orderingKey(event).hashCode(), lanes.size()));
+
+        // Held so that close() cannot queue the lanes' STOP tasks between the check and the offer
+        closeLock.readLock().lock();
+
+        try {
+            if (closed || !lane.queue.offer(new Task(event, handler, stats.get(event.type)))) {
+                rejected.increment();
+                return Status.REJECTED;
+            }
+        } finally {
+            closeLock.readLock().unlock();
+        }
+
+        return Status.ACCEPTED;
+    }
+
+    /**
+     * Returns the number of events waiting across all lanes.
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+
+        for (Lane lane : lanes) {
+            depth += lane.queue.size();
+        }
+
+        return depth;
+    }
+
+    /**
+     * Returns the counters for an event type, or null if no handler was registered for it.
+     */
+    public HandlerStats getStats(String eventType) {
+        return stats.get(eventType);
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Stops accepting events, then waits for the queued events to be handled. Calling it again
+     * has no effect.
+     */
+    @Override
+    public void close() {
+        closeLock.writeLock().lock();
+
+        try {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+
+        for (Lane lane : lanes) {
+            try {
+                // A lane that has exited would never make room for the STOP task
+                if (lane.thread.isAlive()) {
+                    lane.queue.put(STOP);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+        for (Lane lane : lanes) {
+            try {
+                lane.thread.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static String orderingKey(WebhookEvent event) {
+        String userId = event.data != null ? event.data.get("userId") : null;
+
+        return event.tenantId + ":" + (userId != null ? userId : "");
+    }
+
+    private static final class Task {
+        final WebhookEvent event;
+        final Handler handler;
+        final HandlerStats stats;
+
+        Task(WebhookEvent event, Handler handler, HandlerStats stats) {
+            this.event = event;
+            this.handler = handler;
+            this.stats = stats;
+        }
+    }
+
+    private void reportFailure(WebhookEvent event, Throwable error) {
+        try {
+            errorHandler.onError(event, error);
+        } catch (Throwable ex) {
+            // The lane must keep running whatever the error handler does
+        }
+    }
+
+    private static final class Lane {
+        final WebhookDispatcher dispatcher;
+        final BlockingQueue<Task> queue;
+        final Thread thread;
+
+        Lane(WebhookDispatcher dispatcher, int capacity, String name) {
+            this.dispatcher = dispatcher;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.thread = new Thread(this::run, name);
+            this.thread.setDaemon(true);
+        }
+
+        private void run() {
+            while (true) {
+                Task task;
+
+                try {
+                    task = queue.take();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+
+                if (task == STOP) {
+                    return;
+                }
+
+                long start = System.nanoTime();
+                Throwable error = null;
+
+                try {
+                    task.handler.handle(task.event);
+                } catch (Throwable ex) {
+                    // Errors are caught too, as a lane that dies leaves its events unhandled for good
+                    error = ex;
+                }
+
+                task.stats.record(System.nanoTime() - start, error == null);
+
+                if (error != null) {
+                    dispatcher.reportFailure(task.event, error);
+                }
+
+                // An interrupt left behind by a handler must not stop the lane
+                Thread.interrupted();
+            }
+        }
+    }
+}
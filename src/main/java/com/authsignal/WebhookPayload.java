@@ -0,0 +1,20 @@
+package com.authsignal;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A raw webhook request body and the value of its signature header.
+ */
+public class WebhookPayload {
+    public final byte[] body;
+    public final String signature;
+
+    public WebhookPayload(byte[] body, String signature) {
+        this.body = body;
+        this.signature = signature;
+    }
+
+    public WebhookPayload(String body, String signature) {
+        this(body.getBytes(StandardCharsets.UTF_8), signature);
+    }
+}
@@ -0,0 +1,185 @@
+package com.authsignal;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers recently verified webhook events so that redeliveries of the same event can be
+ * detected while they are still inside the signature tolerance window.
+ *
+ * Events are recorded in a ring of time buckets. A bucket is reused as a whole once it is older
+ * than the window, so expiry costs nothing per event, and each bucket holds at most a fixed
+ * number of keys so memory stays bounded. The hot path only uses atomic operations and a
+ * concurrent set. When a bucket is full, further events in that bucket are not remembered and
+ * are reported as not duplicated.
+ */
+public class WebhookReplayCache {
+    /**
+     * What identifies a delivery as a repeat of an earlier one.
+     */
+    public enum KeyStrategy {
+        /**
+         * The event's id, which stays the same when an event is redelivered and re-signed.
+         */
+        EVENT_ID,
+
+        /**
+         * The signature digest, which only matches when the same signed request is replayed.
+         */
+        SIGNATURE
+    }
+
+    private static final int DEFAULT_BUCKET_COUNT = 16;
+    private static final int DEFAULT_MAX_ENTRIES_PER_BUCKET = 100_000;
+
+    private final KeyStrategy keyStrategy;
+    private final long bucketMillis;
+    private final int maxEntriesPerBucket;
+    private final AtomicReferenceArray<Bucket> buckets;
+    private final LongSupplier clock;
+
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+
+    public WebhookReplayCache(Duration window, KeyStrategy keyStrategy, int bucketCount, int maxEntriesPerBucket) {
+        this(window, keyStrategy, bucketCount, maxEntriesPerBucket, System::currentTimeMillis);
+    }
+
+    /**
+     * Creates a cache which remembers events for the default tolerance window of five minutes.
+     */
+    public WebhookReplayCache(KeyStrategy keyStrategy) {
+        this(Duration.ofMinutes(5), keyStrategy, DEFAULT_BUCKET_COUNT, DEFAULT_MAX_ENTRIES_PER_BUCKET);
+    }
+
+    WebhookReplayCache(Duration window, KeyStrategy keyStrategy, int bucketCount, int maxEntriesPerBucket,
+            LongSupplier clock) {
+        if (bucketCount < 2) {
+            throw new IllegalArgumentException("bucketCount must be at least 2");
+        }
+
+        this.keyStrategy = keyStrategy;
+        // The oldest of the live buckets must still cover the whole window
+        this.bucketMillis = Math.max(1, (window.toMillis() + bucketCount - 2) / (bucketCount - 1));
+        this.maxEntriesPerBucket = maxEntriesPerBucket;
+        this.buckets = new AtomicReferenceArray<>(bucketCount);
+        this.clock = clock;
+    }
+
+    public KeyStrategy getKeyStrategy() {
+        return keyStrategy;
+    }
+
+    /**
+     * Records a delivery and returns whether the same key was already recorded within the window.
+     */
+    public boolean isDuplicate(String key) {
+        long epoch = clock.getAsLong() / bucketMillis;
+        int count = buckets.length();
+
+        for (int i = 0; i < count; i++) {
+            Bucket bucket = buckets.get(i);
+
+            if (bucket != null && bucket.epoch > epoch - count && bucket.keys.contains(key)) {
+                duplicates.increment();
+                return true;
+            }
+        }
+
+        Bucket current = currentBucket(epoch);
+
+        if (current.size.incrementAndGet() > maxEntriesPerBucket) {
+            current.size.decrementAndGet();
+            overflows.increment();
+            return false;
+        }
+
+        if (!current.keys.add(key)) {
+            current.size.decrementAndGet();
+            duplicates.increment();
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Removes a recorded key, so that the next delivery with it is not reported as a duplicate.
+     * Used when a delivery was recorded but could not be processed and should be retried.
+     */
+    void forget(String key) {
+        for (int i = 0; i < buckets.length(); i++) {
+            Bucket bucket = buckets.get(i);
+
+            if (bucket != null && bucket.keys.remove(key)) {
+                bucket.size.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of deliveries reported as duplicates.
+     */
+    public long getDuplicateCount() {
+        return duplicates.sum();
+    }
+
+    /**
+     * Returns the number of deliveries that could not be remembered because their bucket was full.
+     */
+    public long getOverflowCount() {
+        return overflows.sum();
+    }
+
+    /**
+     * Returns the number of keys currently remembered, including any in expired buckets that
+     * have not been reused yet.
+     */
+    public int size() {
+        int size = 0;
+
+        for (int i = 0; i < buckets.length(); i++) {
+            Bucket bucket = buckets.get(i);
+
+            if (bucket != null) {
+                size += bucket.size.get();
+            }
+        }
+
+        return size;
+    }
+
+    private Bucket currentBucket(long epoch) {
+        int index = (int) (epoch % buckets.length());
+
+        while (true) {
+            Bucket bucket = buckets.get(index);
+
+            if (bucket != null && bucket.epoch >= epoch) {
+                return bucket;
+            }
+
+            // Replace the expired bucket, dropping all of its keys at once
+            Bucket fresh = new Bucket(epoch);
+
+            if (buckets.compareAndSet(index, bucket, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    private static final class Bucket {
+        final long epoch;
+        final Set<String> keys = ConcurrentHashMap.newKeySet();
+        final AtomicInteger size = new AtomicInteger();
+
+        Bucket(long epoch) {
+            this.epoch = epoch;
+        }
+    }
+}
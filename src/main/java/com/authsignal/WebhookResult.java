@@ -0,0 +1,81 @@
+package com.authsignal;
+
+import com.authsignal.Webhook.FailureReason;
+import com.authsignal.Webhook.InvalidSignatureException;
+import com.authsignal.model.WebhookEvent;
+
+/**
+ * The outcome of verifying a webhook payload: either the verified event, or the reason it was
+ * rejected.
+ */
+public class WebhookResult {
+    private final WebhookEvent event;
+    private final InvalidSignatureException error;
+    private final boolean duplicate;
+    private final WebhookReplayCache replayCache;
+    private final String replayKey;
+
+    private WebhookResult(WebhookEvent event, InvalidSignatureException error, boolean duplicate,
+            WebhookReplayCache replayCache, String replayKey) {
+        this.event = event;
+        this.error = error;
+        this.duplicate = duplicate;
+        this.replayCache = replayCache;
+        this.replayKey = replayKey;
+    }
+
+    static WebhookResult valid(WebhookEvent event, boolean duplicate) {
+        return new WebhookResult(event, null, duplicate, null, null);
+    }
+
+    /**
+     * A valid event seen for the first time, whose key was recorded in the replay cache.
+     */
+    static WebhookResult recorded(WebhookEvent event, WebhookReplayCache replayCache, String replayKey) {
+        return new WebhookResult(event, null, false, replayCache, replayKey);
+    }
+
+    static WebhookResult invalid(InvalidSignatureException error) {
+        return new WebhookResult(null, error, false, null, null);
+    }
+
+    /**
+     * Removes this delivery from the replay cache, so that a redelivery of the event is not
+     * reported as a duplicate. Called when the event could not be processed.
+     */
+    void forgetDelivery() {
+        if (replayKey != null) {
+            replayCache.forget(replayKey);
+        }
+    }
+
+    public boolean isValid() {
+        return error == null;
+    }
+
+    /**
+     * Returns the verified event, or null if the payload was rejected.
+     */
+    public WebhookEvent getEvent() {
+        return event;
+    }
+
+    /**
+     * Returns why the payload was rejected, or null if it was verified.
+     */
+    public InvalidSignatureException getError() {
+        return error;
+    }
+
+    /**
+     * Returns whether a valid event was already delivered within the replay window. Always false
+     * when the webhook has no {@link WebhookReplayCache}.
+     */
+    public boolean isDuplicate() {
+        return duplicate;
+    }
+
+    public FailureReason getFailureReason() {
+        return error != null ? error.getReason() : null;
+    }
+}
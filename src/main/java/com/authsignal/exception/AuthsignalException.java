@@ -1,16 +1,24 @@
 package com.authsignal.exception;
 
+import java.time.Duration;
+
 public class AuthsignalException extends Exception {
     int statusCode;
     String errorCode;
     String errorDescription;
+    Duration retryAfter;
 
     public AuthsignalException(int statusCode, String errorCode, String errorDescription) {
+        this(statusCode, errorCode, errorDescription, null);
+    }
+
+    public AuthsignalException(int statusCode, String errorCode, String errorDescription, Duration retryAfter) {
         super(formatMessage(statusCode, errorCode, errorDescription));
 
         this.statusCode = statusCode;
         this.errorCode = errorCode;
         this.errorDescription = errorDescription;
+        this.retryAfter = retryAfter;
     }
 
     public int getStatusCode() {
@@ -25,6 +33,14 @@ public class AuthsignalException extends Exception {
         return errorDescription;
     }
 
+    /**
+     * Returns how long the API asked for requests to be held off, from the response's
+     * {@code Retry-After} header, or null if the response did not have one.
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
     private static String formatMessage(int statusCode, String errorCode, String errorDescription) {
         String description = formatDescription(errorCode, errorDescription);
 
@@ -0,0 +1,20 @@
+package com.authsignal.json;
+
+final class DefaultJsonCodec {
+    private static volatile JsonCodec codec = new GsonJsonCodec();
+
+    private DefaultJsonCodec() {
+    }
+
+    static JsonCodec get() {
+        return codec;
+    }
+
+    static void set(JsonCodec value) {
+        if (value == null) {
+            throw new IllegalArgumentException("codec must not be null");
+        }
+
+        codec = value;
+    }
+}
@@ -0,0 +1,85 @@
+package com.authsignal.json;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonIOException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link JsonCodec} backed by a single {@link Gson} instance, so type adapters are built once
+ * rather than on every call. This is the default codec.
+ */
+public final class GsonJsonCodec implements JsonCodec {
+    private final Gson gson;
+
+    public GsonJsonCodec() {
+        this.gson = new GsonBuilder().registerTypeAdapterFactory(new ModelTypeAdapterFactory()).create();
+    }
+
+    /**
+     * Creates a codec from a customized builder. The builder is used as it is, without the
+     * streaming adapters the default codec registers for the models, so its own adapters and
+     * settings apply to every type.
+     */
+    public GsonJsonCodec(GsonBuilder builder) {
+        this.gson = builder.create();
+    }
+
+    @Override
+    public String toJson(Object value) {
+        return gson.toJson(value);
+    }
+
+    @Override
+    public byte[] toBytes(Object value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+
+        try (JsonWriter writer = gson.newJsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            gson.toJson(value, value != null ? value.getClass() : Object.class, writer);
+        } catch (IOException ex) {
+            throw new JsonIOException(ex);
+        }
+
+        return out.toByteArray();
+    }
+
+    @Override
+    public <T> T fromJson(String json, Type type) {
+        return gson.fromJson(json, type);
+    }
+
+    @Override
+    public <T> T fromBytes(byte[] json, Type type) {
+        Reader reader = new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8);
+
+        JsonReader jsonReader = gson.newJsonReader(reader);
+
+        return gson.fromJson(jsonReader, type);
+    }
+
+    @Override
+    public <T> T fromStream(InputStream json, Type type) throws IOException {
+        Reader reader = new InputStreamReader(json, StandardCharsets.UTF_8);
+
+        try (JsonReader jsonReader = gson.newJsonReader(reader)) {
+            return gson.fromJson(jsonReader, type);
+        } catch (JsonIOException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+
+            throw ex;
+        }
+    }
+}
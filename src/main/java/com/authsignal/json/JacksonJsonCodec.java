@@ -0,0 +1,128 @@
+package com.authsignal.json;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.AnnotationIntrospector;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyName;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.introspect.Annotated;
+import com.fasterxml.jackson.databind.introspect.NopAnnotationIntrospector;
+import com.google.gson.annotations.SerializedName;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+
+/**
+ * A {@link JsonCodec} backed by Jackson's streaming parser and generator.
+ *
+ * Jackson is not a dependency of this library, so it must be on the application's classpath.
+ * The given mapper is copied and the copy is configured to read and write the models the same
+ * way as {@link GsonJsonCodec}: null fields are omitted, unknown fields are ignored and the
+ * models' {@code @SerializedName} names are honored. The application's own mapper is left as is.
+ */
+public final class JacksonJsonCodec implements JsonCodec {
+    private final ObjectMapper mapper;
+
+    public JacksonJsonCodec() {
+        this(new ObjectMapper());
+    }
+
+    public JacksonJsonCodec(ObjectMapper mapper) {
+        ObjectMapper copy = mapper.copy();
+
+        copy.setAnnotationIntrospector(
+                AnnotationIntrospector.pair(copy.getSerializationConfig().getAnnotationIntrospector(),
+                        new SerializedNameIntrospector()));
+        copy.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        copy.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        copy.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+
+        this.mapper = copy;
+    }
+
+    @Override
+    public String toJson(Object value) {
+        try {
+            return mapper.writeValueAsString(value);
+        } catch (JsonProcessingException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public byte[] toBytes(Object value) {
+        try {
+            return mapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public <T> T fromJson(String json, Type type) {
+        if (json == null || json.isEmpty()) {
+            return null;
+        }
+
+        try {
+            return mapper.readValue(json, javaType(type));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public <T> T fromBytes(byte[] json, Type type) {
+        if (json == null || json.length == 0) {
+            return null;
+        }
+
+        try {
+            return mapper.readValue(json, javaType(type));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public <T> T fromStream(InputStream json, Type type) throws IOException {
+        try (JsonParser parser = mapper.getFactory().createParser(json)) {
+            if (parser.nextToken() == null) {
+                return null;
+            }
+
+            return mapper.readValue(parser, javaType(type));
+        }
+    }
+
+    private JavaType javaType(Type type) {
+        return mapper.getTypeFactory().constructType(type);
+    }
+
+    /**
+     * Maps Gson's {@code @SerializedName} onto Jackson property names.
+     */
+    private static final class SerializedNameIntrospector extends NopAnnotationIntrospector {
+        @Override
+        public PropertyName findNameForSerialization(Annotated annotated) {
+            return findName(annotated);
+        }
+
+        @Override
+        public PropertyName findNameForDeserialization(Annotated annotated) {
+            return findName(annotated);
+        }
+
+        private static PropertyName findName(Annotated annotated) {
+            SerializedName name = annotated.getAnnotation(SerializedName.class);
+
+            return name != null ? PropertyName.construct(name.value()) : null;
+        }
+    }
+}
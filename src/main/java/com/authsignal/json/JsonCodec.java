@@ -0,0 +1,60 @@
+package com.authsignal.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+
+/**
+ * Converts the Authsignal models to and from JSON.
+ *
+ * The client, {@link com.authsignal.Webhook} and the models' {@code toString()} all go through
+ * this interface, so a single JSON library can be used for everything. Implementations must be
+ * thread-safe. {@link GsonJsonCodec} is used unless another codec is configured.
+ */
+public interface JsonCodec {
+    String toJson(Object value);
+
+    /**
+     * Encodes the value as UTF-8 JSON.
+     */
+    byte[] toBytes(Object value);
+
+    <T> T fromJson(String json, Type type);
+
+    /**
+     * Decodes UTF-8 JSON. Returns null when the input is empty.
+     */
+    <T> T fromBytes(byte[] json, Type type);
+
+    /**
+     * Decodes UTF-8 JSON as it is read from the stream. Returns null when the stream is empty.
+     *
+     * The default implementation reads the whole stream before decoding it. Codecs that can
+     * parse incrementally should override it so that memory use does not grow with the size
+     * of the input.
+     */
+    default <T> T fromStream(InputStream json, Type type) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+
+        while ((read = json.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+
+        return fromBytes(out.toByteArray(), type);
+    }
+
+    /**
+     * Returns the codec used by the models' {@code toString()} and by clients and webhooks
+     * created without a codec.
+     */
+    static JsonCodec getDefault() {
+        return DefaultJsonCodec.get();
+    }
+
+    static void setDefault(JsonCodec codec) {
+        DefaultJsonCodec.set(codec);
+    }
+}
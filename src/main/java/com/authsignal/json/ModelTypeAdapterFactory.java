@@ -0,0 +1,550 @@
+package com.authsignal.json;
+
+import com.authsignal.model.*;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streaming adapters for the models on the hot path of the client. They read and write fields
+ * directly instead of going through Gson's reflective adapter, and produce the same JSON as a
+ * default {@link Gson} instance.
+ *
+ * The factory is only registered on the codec's own default Gson instance, since a caller's
+ * builder may change the JSON in ways the adapters do not follow. Even then, an adapter is only
+ * used while the model itself still matches it: the adapter handles exactly the JSON names the
+ * model's fields serialize to, and neither the model nor its fields use {@code @JsonAdapter} or
+ * alternate names. Otherwise the model falls back to the reflective adapter, so fields added to a
+ * model later are never ignored.
+ */
+final class ModelTypeAdapterFactory implements TypeAdapterFactory {
+    /**
+     * The models that have a streaming adapter.
+     */
+    static final List<Class<?>> MODELS = Collections.unmodifiableList(Arrays.asList(
+            TrackAttributes.class, TrackResponse.class, ValidateChallengeResponse.class, UserAuthenticator.class));
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        ModelAdapter<?> adapter = adapterFor(gson, type.getRawType());
+
+        if (adapter == null || !matchesModel(type.getRawType(), adapter)) {
+            return null;
+        }
+
+        return (TypeAdapter<T>) adapter;
+    }
+
+    private static ModelAdapter<?> adapterFor(Gson gson, Class<?> rawType) {
+        if (rawType == TrackAttributes.class) {
+            return new TrackAttributesAdapter(gson);
+        } else if (rawType == TrackResponse.class) {
+            return new TrackResponseAdapter(gson);
+        } else if (rawType == ValidateChallengeResponse.class) {
+            return new ValidateChallengeResponseAdapter(gson);
+        } else if (rawType == UserAuthenticator.class) {
+            return new UserAuthenticatorAdapter(gson);
+        }
+
+        return null;
+    }
+
+    private static boolean matchesModel(Class<?> type, ModelAdapter<?> adapter) {
+        if (type.isAnnotationPresent(JsonAdapter.class)) {
+            return false;
+        }
+
+        for (Field field : serializedFields(type)) {
+            SerializedName name = field.getAnnotation(SerializedName.class);
+
+            if (field.isAnnotationPresent(JsonAdapter.class) || (name != null && name.alternate().length > 0)) {
+                return false;
+            }
+        }
+
+        return jsonNames(type).equals(new HashSet<>(Arrays.asList(adapter.fieldNames())));
+    }
+
+    /**
+     * Returns the JSON names Gson would read and write for the model's fields.
+     */
+    static Set<String> jsonNames(Class<?> type) {
+        Set<String> names = new HashSet<>();
+
+        for (Field field : serializedFields(type)) {
+            SerializedName name = field.getAnnotation(SerializedName.class);
+            names.add(name != null ? name.value() : field.getName());
+        }
+
+        return names;
+    }
+
+    /**
+     * Returns the JSON names the model's streaming adapter reads and writes, or null if it has no
+     * adapter.
+     */
+    static Set<String> handledNames(Class<?> type) {
+        ModelAdapter<?> adapter = adapterFor(new Gson(), type);
+
+        return adapter != null ? new HashSet<>(Arrays.asList(adapter.fieldNames())) : null;
+    }
+
+    private static List<Field> serializedFields(Class<?> type) {
+        List<Field> fields = new ArrayList<>();
+
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+
+                if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic()) {
+                    fields.add(field);
+                }
+            }
+        }
+
+        return fields;
+    }
+
+    private abstract static class ModelAdapter<T> extends TypeAdapter<T> {
+        private final TypeAdapter<String> stringAdapter;
+        private final TypeAdapter<Boolean> booleanAdapter;
+
+        ModelAdapter(Gson gson) {
+            // Gson's own adapters, so values are read as leniently as the reflective adapter reads them
+            this.stringAdapter = gson.getAdapter(String.class);
+            this.booleanAdapter = gson.getAdapter(Boolean.class);
+        }
+
+        /**
+         * Returns the JSON names of the fields this adapter reads and writes.
+         */
+        abstract String[] fieldNames();
+
+        abstract T newInstance();
+
+        abstract void readField(JsonReader in, String name, T value) throws IOException;
+
+        abstract void writeFields(JsonWriter out, T value) throws IOException;
+
+        @Override
+        public T read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            T value = newInstance();
+
+            in.beginObject();
+
+            while (in.hasNext()) {
+                String name = in.nextName();
+
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                } else {
+                    readField(in, name, value);
+                }
+            }
+
+            in.endObject();
+
+            return value;
+        }
+
+        @Override
+        public void write(JsonWriter out, T value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            writeFields(out, value);
+            out.endObject();
+        }
+
+        String readString(JsonReader in) throws IOException {
+            return stringAdapter.read(in);
+        }
+
+        Boolean readBoolean(JsonReader in) throws IOException {
+            return booleanAdapter.read(in);
+        }
+
+        void writeString(JsonWriter out, String name, String value) throws IOException {
+            writeValue(out, name, value, stringAdapter);
+        }
+
+        void writeBoolean(JsonWriter out, String name, Boolean value) throws IOException {
+            writeValue(out, name, value, booleanAdapter);
+        }
+
+        static <V> void writeValue(JsonWriter out, String name, V value, TypeAdapter<V> adapter)
+                throws IOException {
+            if (value != null) {
+                out.name(name);
+                adapter.write(out, value);
+            }
+        }
+
+        String[] readStrings(JsonReader in) throws IOException {
+            List<String> values = new ArrayList<>();
+
+            in.beginArray();
+
+            while (in.hasNext()) {
+                values.add(stringAdapter.read(in));
+            }
+
+            in.endArray();
+
+            return values.toArray(new String[0]);
+        }
+
+        void writeStrings(JsonWriter out, String name, String[] values) throws IOException {
+            if (values == null) {
+                return;
+            }
+
+            out.name(name).beginArray();
+
+            for (String value : values) {
+                stringAdapter.write(out, value);
+            }
+
+            out.endArray();
+        }
+    }
+
+    private static final class TrackAttributesAdapter extends ModelAdapter<TrackAttributes> {
+        private final TypeAdapter<Map<String, Object>> customAdapter;
+
+        TrackAttributesAdapter(Gson gson) {
+            super(gson);
+            this.customAdapter = gson.getAdapter(new TypeToken<Map<String, Object>>() {
+            });
+        }
+
+        @Override
+        String[] fieldNames() {
+            return new String[] {
+                "idempotencyKey", "email", "phoneNumber", "username", "redirectUrl", "ipAddress",
+                "userAgent", "deviceId", "scope", "redirectToSettings", "custom", "locale", "challengeId",
+                "customDomain"
+            };
+        }
+
+        @Override
+        TrackAttributes newInstance() {
+            return new TrackAttributes();
+        }
+
+        @Override
+        void readField(JsonReader in, String name, TrackAttributes value) throws IOException {
+            switch (name) {
+                case "idempotencyKey":
+                    value.idempotencyKey = readString(in);
+                    break;
+                case "email":
+                    value.email = readString(in);
+                    break;
+                case "phoneNumber":
+                    value.phoneNumber = readString(in);
+                    break;
+                case "username":
+                    value.username = readString(in);
+                    break;
+                case "redirectUrl":
+                    value.redirectUrl = readString(in);
+                    break;
+                case "ipAddress":
+                    value.ipAddress = readString(in);
+                    break;
+                case "userAgent":
+                    value.userAgent = readString(in);
+                    break;
+                case "deviceId":
+                    value.deviceId = readString(in);
+                    break;
+                case "scope":
+                    value.scope = readString(in);
+                    break;
+                case "redirectToSettings":
+                    value.redirectToSettings = readBoolean(in);
+                    break;
+                case "custom":
+                    value.custom = customAdapter.read(in);
+                    break;
+                case "locale":
+                    value.locale = readString(in);
+                    break;
+                case "challengeId":
+                    value.challengeId = readString(in);
+                    break;
+                case "customDomain":
+                    value.customDomain = readString(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+
+        @Override
+        void writeFields(JsonWriter out, TrackAttributes value) throws IOException {
+            writeString(out, "idempotencyKey", value.idempotencyKey);
+            writeString(out, "email", value.email);
+            writeString(out, "phoneNumber", value.phoneNumber);
+            writeString(out, "username", value.username);
+            writeString(out, "redirectUrl", value.redirectUrl);
+            writeString(out, "ipAddress", value.ipAddress);
+            writeString(out, "userAgent", value.userAgent);
+            writeString(out, "deviceId", value.deviceId);
+            writeString(out, "scope", value.scope);
+            writeBoolean(out, "redirectToSettings", value.redirectToSettings);
+            writeValue(out, "custom", value.custom, customAdapter);
+            writeString(out, "locale", value.locale);
+            writeString(out, "challengeId", value.challengeId);
+            writeString(out, "customDomain", value.customDomain);
+        }
+    }
+
+    private static final class TrackResponseAdapter extends ModelAdapter<TrackResponse> {
+        private final TypeAdapter<UserActionState> stateAdapter;
+        private final TypeAdapter<VerificationMethodType> methodAdapter;
+        private final TypeAdapter<VerificationMethodType[]> methodsAdapter;
+
+        TrackResponseAdapter(Gson gson) {
+            super(gson);
+            this.stateAdapter = gson.getAdapter(UserActionState.class);
+            this.methodAdapter = gson.getAdapter(VerificationMethodType.class);
+            this.methodsAdapter = gson.getAdapter(VerificationMethodType[].class);
+        }
+
+        @Override
+        String[] fieldNames() {
+            return new String[] {
+                "idempotencyKey", "state", "url", "token", "isEnrolled", "allowedVerificationMethods",
+                "enrolledVerificationMethods", "defaultVerificationMethod", "ruleIds"
+            };
+        }
+
+        @Override
+        TrackResponse newInstance() {
+            return new TrackResponse();
+        }
+
+        @Override
+        void readField(JsonReader in, String name, TrackResponse value) throws IOException {
+            switch (name) {
+                case "idempotencyKey":
+                    value.idempotencyKey = readString(in);
+                    break;
+                case "state":
+                    value.state = stateAdapter.read(in);
+                    break;
+                case "url":
+                    value.url = readString(in);
+                    break;
+                case "token":
+                    value.token = readString(in);
+                    break;
+                case "isEnrolled":
+                    value.isEnrolled = readBoolean(in);
+                    break;
+                case "allowedVerificationMethods":
+                    value.allowedVerificationMethods = methodsAdapter.read(in);
+                    break;
+                case "enrolledVerificationMethods":
+                    value.enrolledVerificationMethods = methodsAdapter.read(in);
+                    break;
+                case "defaultVerificationMethod":
+                    value.defaultVerificationMethod = methodAdapter.read(in);
+                    break;
+                case "ruleIds":
+                    value.ruleIds = readStrings(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+
+        @Override
+        void writeFields(JsonWriter out, TrackResponse value) throws IOException {
+            writeString(out, "idempotencyKey", value.idempotencyKey);
+            writeValue(out, "state", value.state, stateAdapter);
+            writeString(out, "url", value.url);
+            writeString(out, "token", value.token);
+            writeBoolean(out, "isEnrolled", value.isEnrolled);
+            writeValue(out, "allowedVerificationMethods", value.allowedVerificationMethods, methodsAdapter);
+            writeValue(out, "enrolledVerificationMethods", value.enrolledVerificationMethods, methodsAdapter);
+            writeValue(out, "defaultVerificationMethod", value.defaultVerificationMethod, methodAdapter);
+            writeStrings(out, "ruleIds", value.ruleIds);
+        }
+    }
+
+    private static final class ValidateChallengeResponseAdapter extends ModelAdapter<ValidateChallengeResponse> {
+        private final TypeAdapter<UserActionState> stateAdapter;
+
+        ValidateChallengeResponseAdapter(Gson gson) {
+            super(gson);
+            this.stateAdapter = gson.getAdapter(UserActionState.class);
+        }
+
+        @Override
+        String[] fieldNames() {
+            return new String[] {
+                "isValid", "state", "stateUpdatedAt", "userId", "actionCode", "idempotencyKey",
+                "verificationMethod"
+            };
+        }
+
+        @Override
+        ValidateChallengeResponse newInstance() {
+            return new ValidateChallengeResponse();
+        }
+
+        @Override
+        void readField(JsonReader in, String name, ValidateChallengeResponse value) throws IOException {
+            switch (name) {
+                case "isValid":
+                    value.isValid = readBoolean(in);
+                    break;
+                case "state":
+                    value.state = stateAdapter.read(in);
+                    break;
+                case "stateUpdatedAt":
+                    value.stateUpdatedAt = readString(in);
+                    break;
+                case "userId":
+                    value.userId = readString(in);
+                    break;
+                case "actionCode":
+                    value.action = readString(in);
+                    break;
+                case "idempotencyKey":
+                    value.idempotencyKey = readString(in);
+                    break;
+                case "verificationMethod":
+                    value.verificationMethod = readString(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+
+        @Override
+        void writeFields(JsonWriter out, ValidateChallengeResponse value) throws IOException {
+            writeBoolean(out, "isValid", value.isValid);
+            writeValue(out, "state", value.state, stateAdapter);
+            writeString(out, "stateUpdatedAt", value.stateUpdatedAt);
+            writeString(out, "userId", value.userId);
+            writeString(out, "actionCode", value.action);
+            writeString(out, "idempotencyKey", value.idempotencyKey);
+            writeString(out, "verificationMethod", value.verificationMethod);
+        }
+    }
+
+    private static final class UserAuthenticatorAdapter extends ModelAdapter<UserAuthenticator> {
+        private final TypeAdapter<VerificationMethodType> methodAdapter;
+        private final TypeAdapter<WebauthnCredential> credentialAdapter;
+
+        UserAuthenticatorAdapter(Gson gson) {
+            super(gson);
+            this.methodAdapter = gson.getAdapter(VerificationMethodType.class);
+            this.credentialAdapter = gson.getAdapter(WebauthnCredential.class);
+        }
+
+        @Override
+        String[] fieldNames() {
+            return new String[] {
+                "userId", "userAuthenticatorId", "verificationMethod", "createdAt", "verifiedAt",
+                "lastVerifiedAt", "phoneNumber", "email", "username", "displayName", "previousSmsChannel",
+                "webauthnCredential"
+            };
+        }
+
+        @Override
+        UserAuthenticator newInstance() {
+            return new UserAuthenticator();
+        }
+
+        @Override
+        void readField(JsonReader in, String name, UserAuthenticator value) throws IOException {
+            switch (name) {
+                case "userId":
+                    value.userId = readString(in);
+                    break;
+                case "userAuthenticatorId":
+                    value.userAuthenticatorId = readString(in);
+                    break;
+                case "verificationMethod":
+                    value.verificationMethod = methodAdapter.read(in);
+                    break;
+                case "createdAt":
+                    value.createdAt = readString(in);
+                    break;
+                case "verifiedAt":
+                    value.verifiedAt = readString(in);
+                    break;
+                case "lastVerifiedAt":
+                    value.lastVerifiedAt = readString(in);
+                    break;
+                case "phoneNumber":
+                    value.phoneNumber = readString(in);
+                    break;
+                case "email":
+                    value.email = readString(in);
+                    break;
+                case "username":
+                    value.username = readString(in);
+                    break;
+                case "displayName":
+                    value.displayName = readString(in);
+                    break;
+                case "previousSmsChannel":
+                    value.previousSmsChannel = readString(in);
+                    break;
+                case "webauthnCredential":
+                    value.webauthnCredential = credentialAdapter.read(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+
+        @Override
+        void writeFields(JsonWriter out, UserAuthenticator value) throws IOException {
+            writeString(out, "userId", value.userId);
+            writeString(out, "userAuthenticatorId", value.userAuthenticatorId);
+            writeValue(out, "verificationMethod", value.verificationMethod, methodAdapter);
+            writeString(out, "createdAt", value.createdAt);
+            writeString(out, "verifiedAt", value.verifiedAt);
+            writeString(out, "lastVerifiedAt", value.lastVerifiedAt);
+            writeString(out, "phoneNumber", value.phoneNumber);
+            writeString(out, "email", value.email);
+            writeString(out, "username", value.username);
+            writeString(out, "displayName", value.displayName);
+            writeString(out, "previousSmsChannel", value.previousSmsChannel);
+            writeValue(out, "webauthnCredential", value.webauthnCredential, credentialAdapter);
+        }
+    }
+}
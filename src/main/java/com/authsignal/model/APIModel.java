@@ -2,10 +2,10 @@ package com.authsignal.model;
 
 import java.io.Serializable;
 
-import com.google.gson.Gson;
+import com.authsignal.json.JsonCodec;
 
 class ApiModel implements Serializable {
     public String toString() {
-        return new Gson().toJson(this);
+        return JsonCodec.getDefault().toJson(this);
     }
 }
@@ -0,0 +1,10 @@
+package com.authsignal.model;
+
+public class AuthenticatorImportResult extends ApiModel {
+    public long offset;
+    public String userId;
+    public String status;
+    public String userAuthenticatorId;
+    public Integer statusCode;
+    public String error;
+}
@@ -0,0 +1,13 @@
+package com.authsignal.model;
+
+public class JsonWebKey extends ApiModel {
+    public String kty;
+    public String kid;
+    public String alg;
+    public String use;
+    public String n;
+    public String e;
+    public String crv;
+    public String x;
+    public String y;
+}
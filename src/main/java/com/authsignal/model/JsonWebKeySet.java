@@ -0,0 +1,5 @@
+package com.authsignal.model;
+
+public class JsonWebKeySet extends ApiModel {
+    public JsonWebKey[] keys;
+}
@@ -0,0 +1,6 @@
+package com.authsignal.model;
+
+public class UserExportRecord extends ApiModel {
+    public QueryUsersResponseUser user;
+    public UserAuthenticator[] authenticators;
+}
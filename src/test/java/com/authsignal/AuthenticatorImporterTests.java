@@ -0,0 +1,187 @@
+package com.authsignal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import com.authsignal.model.AuthenticatorImportResult;
+import com.authsignal.model.EnrollVerifiedAuthenticatorAttributes;
+import com.authsignal.model.EnrollVerifiedAuthenticatorRequest;
+import com.authsignal.model.VerificationMethodType;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AuthenticatorImporterTests {
+    private StubServer server;
+    private AuthsignalClient client;
+    private Path directory;
+    private Path resultLog;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubServer();
+        client = new AuthsignalClient("secret", server.getBaseURL(), 0);
+        directory = Files.createTempDirectory("authenticator-import");
+        resultLog = directory.resolve("results.ndjson");
+
+        for (int i = 0; i < 20; i++) {
+            server.respond("POST", "/users/user-" + i + "/authenticators", 200,
+                    "{\"authenticator\":{\"userAuthenticatorId\":\"auth-" + i + "\"}}");
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+
+        Files.deleteIfExists(resultLog.resolveSibling("results.ndjson.offset"));
+        Files.deleteIfExists(resultLog);
+        Files.deleteIfExists(directory);
+    }
+
+    @Test
+    public void testLogsEveryRecordAndRetriesRateLimits() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+
+        server.respond("POST", "/users/user-3/authenticators", 400,
+                "{\"error\":\"invalid_request\",\"errorDescription\":\"Invalid phone number.\"}");
+        server.respond("POST", "/users/user-7/authenticators", body -> attempts.incrementAndGet() <= 2
+                ? new StubServer.Response(429, "{\"error\":\"too_many_requests\"}")
+                : new StubServer.Response(200, "{\"authenticator\":{\"userAuthenticatorId\":\"auth-7\"}}"));
+
+        AuthenticatorImportOptions options = new AuthenticatorImportOptions();
+        options.retryDelay = Duration.ofMillis(10);
+        options.commitInterval = 5;
+
+        AuthenticatorImporter importer = new AuthenticatorImporter(client, resultLog, options);
+        importer.run(records(20).iterator());
+
+        List<String> lines = Files.readAllLines(resultLog, StandardCharsets.UTF_8);
+        assertEquals(20, lines.size());
+
+        for (String line : lines) {
+            AuthenticatorImportResult result = client.getCodec().fromJson(line, AuthenticatorImportResult.class);
+
+            if (result.offset == 3) {
+                assertEquals(AuthenticatorImporter.REJECTED, result.status);
+                assertEquals(Integer.valueOf(400), result.statusCode);
+            } else {
+                assertEquals(AuthenticatorImporter.ENROLLED, result.status);
+                assertEquals("auth-" + result.offset, result.userAuthenticatorId);
+            }
+        }
+
+        assertEquals(19, importer.getEnrolledCount());
+        assertEquals(1, importer.getRejectedCount());
+        assertEquals(2, importer.getRetryCount());
+        assertEquals(3, attempts.get());
+        assertEquals(20, importer.readCommittedOffset());
+    }
+
+    @Test
+    public void testOnlyResendsWhenTheApiDidNotProcessTheRecord() throws Exception {
+        AtomicInteger unavailable = new AtomicInteger();
+
+        server.respond("POST", "/users/user-1/authenticators", 500, "{\"error\":\"internal_error\"}");
+        server.respond("POST", "/users/user-2/authenticators", 503, "{\"error\":\"unavailable\"}");
+        server.respond("POST", "/users/user-3/authenticators", body -> unavailable.incrementAndGet() == 1
+                ? new StubServer.Response(503, "{\"error\":\"unavailable\"}").header("Retry-After", "0")
+                : new StubServer.Response(200, "{\"authenticator\":{\"userAuthenticatorId\":\"auth-3\"}}"));
+
+        AuthenticatorImportOptions options = new AuthenticatorImportOptions();
+        options.retryDelay = Duration.ofMillis(10);
+
+        AuthenticatorImporter importer = new AuthenticatorImporter(client, resultLog, options);
+        importer.run(records(5).iterator());
+
+        assertEquals(3, importer.getEnrolledCount());
+        assertEquals(2, importer.getFailedCount());
+        assertEquals(1, importer.getRetryCount());
+        assertEquals(1, server.getRequestCount("POST", "/users/user-1/authenticators"));
+        assertEquals(1, server.getRequestCount("POST", "/users/user-2/authenticators"));
+        assertEquals(2, server.getRequestCount("POST", "/users/user-3/authenticators"));
+    }
+
+    @Test
+    public void testLogsMalformedLinesAndCarriesOn() throws Exception {
+        List<EnrollVerifiedAuthenticatorRequest> records = records(3);
+        Path input = directory.resolve("records.ndjson");
+
+        Files.write(input, Arrays.asList(client.getCodec().toJson(records.get(0)), "{\"userId\":", "",
+                client.getCodec().toJson(records.get(1)), "null", client.getCodec().toJson(records.get(2))),
+                StandardCharsets.UTF_8);
+
+        try {
+            AuthenticatorImporter importer = new AuthenticatorImporter(client, resultLog);
+            importer.run(input);
+
+            List<String> statuses = new ArrayList<>();
+
+            for (String line : Files.readAllLines(resultLog, StandardCharsets.UTF_8)) {
+                AuthenticatorImportResult result = client.getCodec().fromJson(line, AuthenticatorImportResult.class);
+                statuses.add(result.offset + ":" + result.status);
+            }
+
+            Collections.sort(statuses);
+
+            assertEquals(Arrays.asList("0:ENROLLED", "1:REJECTED", "2:ENROLLED", "3:REJECTED", "4:ENROLLED"),
+                    statuses);
+            assertEquals(3, importer.getEnrolledCount());
+            assertEquals(2, importer.getRejectedCount());
+            assertEquals(5, importer.readCommittedOffset());
+        } finally {
+            Files.deleteIfExists(input);
+        }
+    }
+
+    @Test
+    public void testResumesFromCommittedOffset() throws Exception {
+        Files.write(resultLog.resolveSibling("results.ndjson.offset"), "15".getBytes(StandardCharsets.UTF_8));
+
+        AuthenticatorImporter importer = new AuthenticatorImporter(client, resultLog);
+        importer.run(records(20).iterator());
+
+        assertEquals(5, importer.getEnrolledCount());
+        assertEquals(0, server.getRequestCount("POST", "/users/user-14/authenticators"));
+        assertEquals(1, server.getRequestCount("POST", "/users/user-15/authenticators"));
+        assertEquals(20, importer.readCommittedOffset());
+    }
+
+    @Test
+    public void testRaisesConcurrencyWhileRequestsSucceed() throws Exception {
+        AuthenticatorImportOptions options = new AuthenticatorImportOptions();
+        options.initialConcurrency = 1;
+        options.maxConcurrency = 4;
+
+        AuthenticatorImporter importer = new AuthenticatorImporter(client, resultLog, options);
+        importer.run(records(20).iterator());
+
+        assertEquals(20, importer.getEnrolledCount());
+        assertEquals(4, importer.getConcurrencyLimit());
+    }
+
+    private static List<EnrollVerifiedAuthenticatorRequest> records(int count) {
+        List<EnrollVerifiedAuthenticatorRequest> records = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            EnrollVerifiedAuthenticatorRequest request = new EnrollVerifiedAuthenticatorRequest();
+            request.userId = "user-" + i;
+            request.attributes = new EnrollVerifiedAuthenticatorAttributes();
+            request.attributes.verificationMethod = VerificationMethodType.SMS;
+            request.attributes.phoneNumber = "+6427000000" + i;
+            records.add(request);
+        }
+
+        return records;
+    }
+}
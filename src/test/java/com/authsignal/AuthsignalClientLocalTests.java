@@ -0,0 +1,514 @@
+package com.authsignal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import com.authsignal.exception.AuthsignalException;
+import com.authsignal.json.GsonJsonCodec;
+import com.authsignal.json.JsonCodec;
+import com.authsignal.model.*;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Tests the client against an in-process stub server rather than the Authsignal API.
+ */
+public class AuthsignalClientLocalTests {
+    private StubServer server;
+    private AuthsignalClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubServer();
+        client = new AuthsignalClient("secret", server.getBaseURL());
+    }
+
+    @After
+    public void tearDown() {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void testDecodesLargeResponseAsItArrives() throws Exception {
+        int userCount = 20000;
+        StringBuilder body = new StringBuilder("{\"users\":[");
+
+        for (int i = 0; i < userCount; i++) {
+            body.append(i > 0 ? "," : "")
+                    .append("{\"userId\":\"user-").append(i).append("\",\"email\":\"user-").append(i)
+                    .append("@example.com\",\"emailVerified\":true}");
+        }
+
+        body.append("],\"lastEvaluatedUserId\":\"user-").append(userCount - 1).append("\"}");
+
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        int half = bytes.length / 2;
+        CountDownLatch decodeStarted = new CountDownLatch(1);
+        AtomicLong readBeforeRest = new AtomicLong(-1);
+        AtomicLong read = new AtomicLong();
+
+        // The second half is only sent once decoding has started, so buffering the whole body
+        // before decoding it would never complete
+        server.respond("GET", "/users", requestBody -> new StubServer.Response(200, out -> {
+            out.write(bytes, 0, half);
+            out.flush();
+
+            if (decodeStarted.await(10, TimeUnit.SECONDS)) {
+                readBeforeRest.set(read.get());
+            }
+
+            out.write(bytes, half, bytes.length - half);
+        }));
+
+        JsonCodec codec = new GsonJsonCodec();
+        AuthsignalClientOptions options = new AuthsignalClientOptions();
+        options.jsonCodec = new JsonCodec() {
+            @Override
+            public String toJson(Object value) {
+                return codec.toJson(value);
+            }
+
+            @Override
+            public byte[] toBytes(Object value) {
+                return codec.toBytes(value);
+            }
+
+            @Override
+            public <T> T fromJson(String json, Type type) {
+                return codec.fromJson(json, type);
+            }
+
+            @Override
+            public <T> T fromBytes(byte[] json, Type type) {
+                return codec.fromBytes(json, type);
+            }
+
+            @Override
+            public <T> T fromStream(InputStream json, Type type) throws IOException {
+                return codec.fromStream(new FilterInputStream(json) {
+                    @Override
+                    public int read(byte[] buffer, int offset, int length) throws IOException {
+                        int count = super.read(buffer, offset, length);
+                        read.addAndGet(Math.max(0, count));
+                        decodeStarted.countDown();
+                        return count;
+                    }
+                }, type);
+            }
+        };
+
+        try (AuthsignalClient streamingClient = new AuthsignalClient("secret", server.getBaseURL(), options)) {
+            QueryUsersResponse response = streamingClient.queryUsers(new QueryUsersRequest())
+                    .get(20, TimeUnit.SECONDS);
+
+            assertEquals(userCount, response.users.length);
+            assertEquals("user-19999@example.com", response.users[userCount - 1].email);
+            assertEquals("user-19999", response.lastEvaluatedUserId);
+            assertTrue("decoding should start before the body is complete", readBeforeRest.get() >= 0);
+            assertTrue("only part of the body should be held before it is decoded", readBeforeRest.get() <= half);
+        }
+    }
+
+    @Test
+    public void testDecodesOnSingleThreadExecutor() throws Exception {
+        StringBuilder body = new StringBuilder("{\"users\":[");
+
+        for (int i = 0; i < 5000; i++) {
+            body.append(i > 0 ? "," : "").append("{\"userId\":\"user-").append(i).append("\"}");
+        }
+
+        server.respond("GET", "/users", 200, body.append("]}").toString());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        AuthsignalClientOptions options = new AuthsignalClientOptions();
+        options.executor = executor;
+
+        try (AuthsignalClient singleThreadClient = new AuthsignalClient("secret", server.getBaseURL(), options)) {
+            List<CompletableFuture<QueryUsersResponse>> responses = new ArrayList<>();
+
+            for (int i = 0; i < 8; i++) {
+                responses.add(singleThreadClient.queryUsers(new QueryUsersRequest()));
+            }
+
+            // Decoding must not wait on the thread that delivers the response bodies
+            for (CompletableFuture<QueryUsersResponse> response : responses) {
+                assertEquals(5000, response.get(10, TimeUnit.SECONDS).users.length);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testMapsErrorResponse() throws Exception {
+        server.respond("GET", "/users/missing", 401,
+                "{\"error\":\"unauthorized\",\"errorDescription\":\"The request is unauthorized.\"}");
+
+        GetUserRequest request = new GetUserRequest();
+        request.userId = "missing";
+
+        try {
+            client.getUser(request).get();
+
+            fail("should throw ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue("cause should be an AuthsignalException", e.getCause() instanceof AuthsignalException);
+
+            AuthsignalException exception = (AuthsignalException) e.getCause();
+
+            assertEquals(401, exception.getStatusCode());
+            assertEquals("unauthorized", exception.getErrorCode());
+            assertEquals("The request is unauthorized.", exception.getErrorDescription());
+        }
+    }
+
+    @Test
+    public void testRetriesServerErrorsOnGet() throws Exception {
+        server.respond("GET", "/users/flaky/authenticators", 503, "{\"error\":\"unavailable\"}");
+
+        GetAuthenticatorsRequest request = new GetAuthenticatorsRequest();
+        request.userId = "flaky";
+
+        try {
+            client.getAuthenticators(request).get();
+
+            fail("should throw ExecutionException");
+        } catch (ExecutionException e) {
+            assertEquals(503, ((AuthsignalException) e.getCause()).getStatusCode());
+        }
+
+        assertEquals(3, server.getRequestCount("GET", "/users/flaky/authenticators"));
+    }
+
+    @Test
+    public void testEmptyResponseBody() throws Exception {
+        server.respond("DELETE", "/users/deleted", 200, "");
+
+        DeleteUserRequest request = new DeleteUserRequest();
+        request.userId = "deleted";
+
+        assertNull(client.deleteUser(request).get());
+    }
+
+    @Test
+    public void testCachesUsersUntilInvalidated() throws Exception {
+        AuthsignalClientOptions options = new AuthsignalClientOptions();
+        options.userCacheTtl = Duration.ofMinutes(1);
+
+        try (AuthsignalClient cachingClient = new AuthsignalClient("secret", server.getBaseURL(), options)) {
+            server.respond("GET", "/users/cached", 200, "{\"isEnrolled\":true,\"email\":\"a@example.com\"}");
+            server.respond("POST", "/users/cached", 200, "{\"email\":\"b@example.com\"}");
+
+            GetUserRequest request = new GetUserRequest();
+            request.userId = "cached";
+
+            assertTrue(cachingClient.getUser(request).get().isEnrolled);
+            assertTrue(cachingClient.getUser(request).get().isEnrolled);
+            assertEquals(1, server.getRequestCount("GET", "/users/cached"));
+
+            UpdateUserRequest update = new UpdateUserRequest();
+            update.userId = "cached";
+            update.attributes = new UserAttributes();
+            update.attributes.email = "b@example.com";
+
+            cachingClient.updateUser(update).get();
+            cachingClient.getUser(request).get();
+
+            assertEquals(2, server.getRequestCount("GET", "/users/cached"));
+
+            WebhookEvent event = new WebhookEvent();
+            event.type = "authenticator.created";
+            event.data = new HashMap<>();
+            event.data.put("userId", "cached");
+
+            cachingClient.invalidateCachedUser(event);
+            cachingClient.getUser(request).get();
+
+            assertEquals(3, server.getRequestCount("GET", "/users/cached"));
+            assertEquals(1, cachingClient.getUserCache().getHitCount());
+        }
+    }
+
+    @Test
+    public void testCoalescesConcurrentGets() throws Exception {
+        AuthsignalClientOptions options = new AuthsignalClientOptions();
+        options.coalesceGets = true;
+
+        CountDownLatch release = new CountDownLatch(1);
+
+        server.respond("GET", "/users/busy", body -> {
+            release.await();
+            return new StubServer.Response(200, "{\"userId\":\"busy\"}");
+        });
+
+        try (AuthsignalClient coalescingClient = new AuthsignalClient("secret", server.getBaseURL(), options)) {
+            GetUserRequest request = new GetUserRequest();
+            request.userId = "busy";
+
+            List<CompletableFuture<GetUserResponse>> futures = new ArrayList<>();
+
+            for (int i = 0; i < 10; i++) {
+                futures.add(coalescingClient.getUser(request));
+            }
+
+            futures.get(0).cancel(true);
+            release.countDown();
+
+            for (int i = 1; i < 10; i++) {
+                assertEquals("busy", futures.get(i).get().userId);
+            }
+
+            assertEquals(1, server.getRequestCount("GET", "/users/busy"));
+            assertEquals(9, coalescingClient.getRequestCoalescer().getCoalescedCount());
+        }
+    }
+
+    @Test
+    public void testCachesSessionsUntilRevoked() throws Exception {
+        AuthsignalClientOptions options = new AuthsignalClientOptions();
+        options.sessionCacheMaxSize = 100;
+
+        long expiresAt = System.currentTimeMillis() / 1000 + 600;
+
+        server.respond("POST", "/sessions/validate", 200,
+                "{\"user\":{\"userId\":\"user-1\"},\"expiresAt\":" + expiresAt + "}");
+        server.respond("POST", "/sessions/user/revoke", 200, "");
+        server.respond("POST", "/sessions/revoke", 200, "");
+
+        try (AuthsignalClient cachingClient = new AuthsignalClient("secret", server.getBaseURL(), options)) {
+            ValidateSessionRequest request = new ValidateSessionRequest();
+            request.accessToken = "token-1";
+
+            for (int i = 0; i < 3; i++) {
+                assertEquals("user-1", cachingClient.validateSession(request).get().user.userId);
+            }
+
+            assertEquals(1, server.getRequestCount("POST", "/sessions/validate"));
+
+            RevokeUserSessionsRequest revoke = new RevokeUserSessionsRequest();
+            revoke.userId = "user-1";
+            cachingClient.revokeUserSessions(revoke).get();
+
+            cachingClient.validateSession(request).get();
+
+            assertEquals(2, server.getRequestCount("POST", "/sessions/validate"));
+            assertEquals(2, cachingClient.getSessionCache().getHitCount());
+            assertEquals(0.5, cachingClient.getSessionCache().getHitRate(), 0.001);
+
+            RevokeSessionRequest revokeSession = new RevokeSessionRequest();
+            revokeSession.accessToken = "token-1";
+            cachingClient.revokeSession(revokeSession).get();
+
+            cachingClient.validateSession(request).get();
+
+            assertEquals(3, server.getRequestCount("POST", "/sessions/validate"));
+        }
+    }
+
+    @Test
+    public void testRevocationOnlyDropsItsOwnInFlightValidations() throws Exception {
+        AuthsignalClientOptions options = new AuthsignalClientOptions();
+        options.sessionCacheMaxSize = 100;
+
+        long expiresAt = System.currentTimeMillis() / 1000 + 600;
+        CountDownLatch release = new CountDownLatch(1);
+
+        server.respond("POST", "/sessions/validate", body -> {
+            release.await();
+            String userId = body.contains("token-a") ? "user-a" : "user-b";
+            return new StubServer.Response(200,
+                    "{\"user\":{\"userId\":\"" + userId + "\"},\"expiresAt\":" + expiresAt + "}");
+        });
+        server.respond("POST", "/sessions/user/revoke", 200, "");
+
+        try (AuthsignalClient cachingClient = new AuthsignalClient("secret", server.getBaseURL(), options)) {
+            ValidateSessionRequest tokenA = new ValidateSessionRequest();
+            tokenA.accessToken = "token-a";
+            ValidateSessionRequest tokenB = new ValidateSessionRequest();
+            tokenB.accessToken = "token-b";
+
+            CompletableFuture<ValidateSessionResponse> first = cachingClient.validateSession(tokenA);
+            CompletableFuture<ValidateSessionResponse> second = cachingClient.validateSession(tokenB);
+
+            RevokeUserSessionsRequest revoke = new RevokeUserSessionsRequest();
+            revoke.userId = "user-a";
+            cachingClient.revokeUserSessions(revoke).get();
+
+            release.countDown();
+            first.get();
+            second.get();
+
+            cachingClient.validateSession(tokenA).get();
+            cachingClient.validateSession(tokenB).get();
+
+            assertEquals("only the revoked user's validation should be refetched",
+                    3, server.getRequestCount("POST", "/sessions/validate"));
+        }
+    }
+
+    @Test
+    public void testDoesNotCacheSessionsAboutToExpire() throws Exception {
+        AuthsignalClientOptions options = new AuthsignalClientOptions();
+        options.sessionCacheMaxSize = 100;
+
+        long expiresAt = System.currentTimeMillis() / 1000 + 10;
+
+        server.respond("POST", "/sessions/validate", 200,
+                "{\"user\":{\"userId\":\"user-1\"},\"expiresAt\":" + expiresAt + "}");
+
+        try (AuthsignalClient cachingClient = new AuthsignalClient("secret", server.getBaseURL(), options)) {
+            ValidateSessionRequest request = new ValidateSessionRequest();
+            request.accessToken = "token-2";
+
+            cachingClient.validateSession(request).get();
+            cachingClient.validateSession(request).get();
+
+            assertEquals(2, server.getRequestCount("POST", "/sessions/validate"));
+        }
+    }
+
+    @Test
+    public void testCoalescesRefreshesOfTheSameToken() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+
+        server.respond("POST", "/sessions/refresh", body -> {
+            release.await();
+            return new StubServer.Response(200, "{\"accessToken\":\"access-2\",\"refreshToken\":\"refresh-2\"}");
+        });
+
+        RefreshSessionRequest request = new RefreshSessionRequest();
+        request.refreshToken = "refresh-1";
+
+        List<CompletableFuture<RefreshSessionResponse>> futures = new ArrayList<>();
+
+        for (int i = 0; i < 5; i++) {
+            futures.add(client.refreshSession(request));
+        }
+
+        release.countDown();
+
+        for (CompletableFuture<RefreshSessionResponse> future : futures) {
+            assertEquals("access-2", future.get().accessToken);
+        }
+
+        assertEquals(1, server.getRequestCount("POST", "/sessions/refresh"));
+        assertEquals(4, client.getSessionRefreshCoalescer().getCoalescedCount());
+
+        client.refreshSession(request).get();
+
+        assertEquals("responses are not retained by default", 2, server.getRequestCount("POST", "/sessions/refresh"));
+    }
+
+    @Test
+    public void testRetainsRefreshesWhenEnabled() throws Exception {
+        AuthsignalClientOptions options = new AuthsignalClientOptions();
+        options.sessionRefreshRetention = Duration.ofSeconds(10);
+
+        server.respond("POST", "/sessions/refresh", 200,
+                "{\"accessToken\":\"access-2\",\"refreshToken\":\"refresh-2\"}");
+
+        try (AuthsignalClient retainingClient = new AuthsignalClient("secret", server.getBaseURL(), options)) {
+            RefreshSessionRequest request = new RefreshSessionRequest();
+            request.refreshToken = "refresh-1";
+
+            retainingClient.refreshSession(request).get();
+
+            assertEquals("a late refresh should reuse the retained response",
+                    "refresh-2", retainingClient.refreshSession(request).get().refreshToken);
+            assertEquals(1, server.getRequestCount("POST", "/sessions/refresh"));
+        }
+    }
+
+    @Test
+    public void testStreamsUsersAcrossPages() throws Exception {
+        server.respond("GET", "/users", 200,
+                "{\"users\":[{\"userId\":\"u1\"},{\"userId\":\"u2\"}],\"lastEvaluatedUserId\":\"u2\"}");
+        server.respond("GET", "/users?lastEvaluatedUserId=u2", 200,
+                "{\"users\":[{\"userId\":\"u3\"},{\"userId\":\"u4\"}],\"lastEvaluatedUserId\":\"u4\"}");
+        server.respond("GET", "/users?lastEvaluatedUserId=u4", 200, "{\"users\":[{\"userId\":\"u5\"}]}");
+
+        List<String> userIds;
+
+        try (Stream<QueryUsersResponseUser> users = client.streamUsers(new QueryUsersRequest(), 1)) {
+            userIds = users.map(user -> user.userId).collect(Collectors.toList());
+        }
+
+        assertEquals(Arrays.asList("u1", "u2", "u3", "u4", "u5"), userIds);
+        assertEquals(1, server.getRequestCount("GET", "/users?lastEvaluatedUserId=u4"));
+    }
+
+    @Test
+    public void testStreamingUsersThrowsApiErrors() throws Exception {
+        server.respond("GET", "/users", 200, "{\"users\":[{\"userId\":\"u1\"}],\"lastEvaluatedUserId\":\"u1\"}");
+        server.respond("GET", "/users?lastEvaluatedUserId=u1", 400,
+                "{\"error\":\"invalid_request\",\"errorDescription\":\"Invalid cursor.\"}");
+
+        try (Stream<QueryUsersResponseUser> users = client.streamUsers(new QueryUsersRequest())) {
+            users.forEach(user -> assertEquals("u1", user.userId));
+
+            fail("should throw CompletionException");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof AuthsignalException);
+            assertEquals(400, ((AuthsignalException) e.getCause()).getStatusCode());
+        }
+    }
+
+    @Test
+    public void testPublishesUsersAcrossPages() throws Exception {
+        server.respond("GET", "/users", 200,
+                "{\"users\":[{\"userId\":\"u1\"}],\"lastEvaluatedUserId\":\"u1\"}");
+        server.respond("GET", "/users?lastEvaluatedUserId=u1", 200, "{\"users\":[{\"userId\":\"u2\"}]}");
+
+        List<String> userIds = new ArrayList<>();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+
+        client.publishUsers(new QueryUsersRequest()).subscribe(new Flow.Subscriber<QueryUsersResponseUser>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(QueryUsersResponseUser user) {
+                userIds.add(user.userId);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                done.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                done.complete(null);
+            }
+        });
+
+        done.get();
+
+        assertEquals(Arrays.asList("u1", "u2"), userIds);
+    }
+}
@@ -0,0 +1,175 @@
+package com.authsignal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import com.authsignal.exception.AuthsignalException;
+import com.authsignal.model.DeleteUserRequest;
+import com.authsignal.model.GetUserResponse;
+import com.authsignal.model.RevokeUserSessionsRequest;
+import com.authsignal.model.UserAuthenticator;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+public class BulkUserOperationsTests {
+    private StubServer server;
+    private AuthsignalClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubServer();
+        client = new AuthsignalClient("secret", server.getBaseURL(), 0);
+    }
+
+    @After
+    public void tearDown() {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void testReportsSuccessesAndFailures() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            server.respond("DELETE", "/users/user-" + i, i % 10 == 0 ? 404 : 200,
+                    i % 10 == 0 ? "{\"error\":\"not_found\"}" : "");
+        }
+
+        BulkOptions options = new BulkOptions();
+        options.maxRecordedFailures = 3;
+        options.progressInterval = 10;
+
+        List<Long> progress = new ArrayList<>();
+        options.progressListener = (succeeded, failed) -> {
+            synchronized (progress) {
+                progress.add(succeeded + failed);
+            }
+        };
+
+        BulkReport report = new BulkUserOperations(client, options)
+                .deleteUsers(IntStream.range(0, 50).mapToObj(i -> deleteRequest("user-" + i)))
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals(45, report.getSucceededCount());
+        assertEquals(5, report.getFailedCount());
+        assertEquals("failures beyond the cap should only be counted", 3, report.getFailures().size());
+        assertTrue(report.getFailures().get(0).getError() instanceof AuthsignalException);
+        assertEquals(404, ((AuthsignalException) report.getFailures().get(0).getError()).getStatusCode());
+        assertEquals(6, progress.size());
+        assertEquals(Long.valueOf(50), progress.get(progress.size() - 1));
+    }
+
+    @Test
+    public void testBoundsRequestsInFlight() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+
+        server.respond("POST", "/sessions/user/revoke", body -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(5);
+            inFlight.decrementAndGet();
+            return new StubServer.Response(200, "");
+        });
+
+        BulkOptions options = new BulkOptions();
+        options.maxInFlight = 3;
+
+        List<RevokeUserSessionsRequest> requests = new ArrayList<>();
+
+        for (int i = 0; i < 30; i++) {
+            RevokeUserSessionsRequest request = new RevokeUserSessionsRequest();
+            request.userId = "user-" + i;
+            requests.add(request);
+        }
+
+        BulkReport report = new BulkUserOperations(client, options).revokeUserSessions(requests)
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals(30, report.getSucceededCount());
+        assertTrue("at most 3 requests should be in flight", maxInFlight.get() <= 3);
+    }
+
+    @Test
+    public void testReportsListenerErrorsWithoutStopping() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            server.respond("DELETE", "/users/user-" + i, 200, "");
+        }
+
+        BulkOptions options = new BulkOptions();
+        options.maxInFlight = 2;
+        options.progressInterval = 1;
+        options.progressListener = (succeeded, failed) -> {
+            throw new IllegalStateException("listener failed");
+        };
+
+        BulkReport report = new BulkUserOperations(client, options)
+                .deleteUsers(IntStream.range(0, 20).mapToObj(i -> deleteRequest("user-" + i)))
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals(20, report.getSucceededCount());
+        assertEquals(0, report.getFailedCount());
+        assertTrue(report.getListenerError() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testCompletesEmptyBatches() throws Exception {
+        BulkReport report = new BulkUserOperations(client).deleteUsers(new ArrayList<DeleteUserRequest>())
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals(0, report.getSucceededCount());
+        assertEquals(0, report.getFailedCount());
+    }
+
+    private static DeleteUserRequest deleteRequest(String userId) {
+        DeleteUserRequest request = new DeleteUserRequest();
+        request.userId = userId;
+        return request;
+    }
+
+    @Test
+    public void testGetsEachUserOnce() throws Exception {
+        server.respond("GET", "/users/user-1", 200, "{\"userId\":\"user-1\",\"email\":\"a@example.com\"}");
+        server.respond("GET", "/users/user-2", 200, "{\"userId\":\"user-2\",\"email\":\"b@example.com\"}");
+        server.respond("GET", "/users/missing", 404, "{\"error\":\"not_found\"}");
+
+        MultiGetResult<GetUserResponse> result = new BulkUserOperations(client)
+                .getUsers(Arrays.asList("user-1", "user-2", "user-1", "missing"))
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals(2, result.getValues().size());
+        assertEquals("b@example.com", result.getValues().get("user-2").email);
+        assertEquals(404, ((AuthsignalException) result.getErrors().get("missing")).getStatusCode());
+        assertEquals(1, server.getRequestCount("GET", "/users/user-1"));
+    }
+
+    @Test
+    public void testGetsAuthenticatorsFromCachedClient() throws Exception {
+        server.respond("GET", "/users/user-1/authenticators", 200, "[{\"userAuthenticatorId\":\"a1\"}]");
+        server.respond("GET", "/users/user-1", 200, "{\"userId\":\"user-1\"}");
+
+        AuthsignalClientOptions clientOptions = new AuthsignalClientOptions();
+        clientOptions.userCacheTtl = Duration.ofMinutes(1);
+
+        try (AuthsignalClient cachingClient = new AuthsignalClient("secret", server.getBaseURL(), clientOptions)) {
+            BulkUserOperations operations = new BulkUserOperations(cachingClient);
+
+            operations.getUsers(Arrays.asList("user-1")).get(10, TimeUnit.SECONDS);
+            MultiGetResult<GetUserResponse> users = operations.getUsers(Arrays.asList("user-1"))
+                    .get(10, TimeUnit.SECONDS);
+            MultiGetResult<UserAuthenticator[]> authenticators = operations.getAuthenticators(Arrays.asList("user-1"))
+                    .get(10, TimeUnit.SECONDS);
+
+            assertEquals("user-1", users.getValues().get("user-1").userId);
+            assertEquals("a1", authenticators.getValues().get("user-1")[0].userAuthenticatorId);
+            assertEquals("the second lookup should be served from the cache",
+                    1, server.getRequestCount("GET", "/users/user-1"));
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.authsignal;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PagedPublisherTests {
+    private final AtomicInteger fetches = new AtomicInteger();
+
+    // Three pages: [0, 1], [2, 3], [4]
+    private final PagedPublisher<Integer> publisher = new PagedPublisher<>(cursor -> {
+        fetches.incrementAndGet();
+        int start = cursor != null ? Integer.parseInt(cursor) : 0;
+
+        return CompletableFuture.completedFuture(start < 4
+                ? new PagedPublisher.Page<>(Arrays.asList(start, start + 1), String.valueOf(start + 2))
+                : new PagedPublisher.Page<>(Arrays.asList(start), null));
+    });
+
+    @Test
+    public void testFetchesPagesOnlyOnDemand() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+
+        assertEquals("nothing should be fetched before a request", 0, fetches.get());
+
+        subscriber.subscription.request(1);
+
+        assertEquals(Arrays.asList(0), subscriber.items);
+        assertEquals(1, fetches.get());
+
+        subscriber.subscription.request(2);
+
+        assertEquals(Arrays.asList(0, 1, 2), subscriber.items);
+        assertEquals(2, fetches.get());
+        assertFalse(subscriber.completed);
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), subscriber.items);
+        assertEquals(3, fetches.get());
+        assertTrue(subscriber.completed);
+    }
+
+    @Test
+    public void testStopsFetchingWhenCancelled() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+
+        subscriber.subscription.request(2);
+        subscriber.subscription.cancel();
+        subscriber.subscription.request(10);
+
+        assertEquals(Arrays.asList(0, 1), subscriber.items);
+        assertEquals(1, fetches.get());
+        assertFalse(subscriber.completed);
+    }
+
+    @Test
+    public void testSignalsFetchErrors() {
+        CompletableFuture<PagedPublisher.Page<Integer>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("unavailable"));
+
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        new PagedPublisher<Integer>(cursor -> failed).subscribe(subscriber);
+
+        subscriber.subscription.request(1);
+
+        assertTrue(subscriber.error instanceof IllegalStateException);
+        assertTrue(subscriber.items.isEmpty());
+    }
+
+    @Test
+    public void testRejectsNonPositiveRequests() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+
+        subscriber.subscription.request(0);
+
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+        assertEquals(0, fetches.get());
+    }
+
+    @Test
+    public void testRejectsNullSubscriber() {
+        try {
+            publisher.subscribe(null);
+            fail("should throw NullPointerException");
+        } catch (NullPointerException e) {
+            assertEquals("subscriber must not be null", e.getMessage());
+        }
+
+        assertEquals(0, fetches.get());
+    }
+
+    private static class RecordingSubscriber implements Flow.Subscriber<Integer> {
+        Flow.Subscription subscription;
+        final List<Integer> items = new ArrayList<>();
+        boolean completed;
+        Throwable error;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Integer item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
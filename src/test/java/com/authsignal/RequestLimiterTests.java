@@ -0,0 +1,94 @@
+package com.authsignal;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class RequestLimiterTests {
+    @Test
+    public void testQueuesTasksOverLimit() throws Exception {
+        RequestLimiter limiter = new RequestLimiter(2);
+
+        List<CompletableFuture<Integer>> tasks = new ArrayList<>();
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+
+        for (int i = 0; i < 5; i++) {
+            CompletableFuture<Integer> task = new CompletableFuture<>();
+            tasks.add(task);
+            results.add(limiter.submit(() -> task));
+        }
+
+        assertEquals(2, limiter.getInFlight());
+        assertEquals(3, limiter.getQueued());
+
+        for (int i = 0; i < 5; i++) {
+            tasks.get(i).complete(i);
+        }
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(Integer.valueOf(i), results.get(i).get());
+        }
+
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(0, limiter.getQueued());
+    }
+
+    @Test
+    public void testFailedTaskReleasesSlot() throws Exception {
+        RequestLimiter limiter = new RequestLimiter(1);
+
+        CompletableFuture<String> failed = limiter.submit(() -> {
+            throw new IllegalStateException("boom");
+        });
+
+        assertTrue("task should fail", failed.isCompletedExceptionally());
+
+        CompletableFuture<String> next = limiter.submit(() -> CompletableFuture.completedFuture("ok"));
+
+        assertEquals("ok", next.get());
+    }
+
+    @Test
+    public void testStartsTasksThatCompleteImmediatelyWithoutRecursing() throws Exception {
+        RequestLimiter limiter = new RequestLimiter(1);
+
+        CompletableFuture<Integer> first = new CompletableFuture<>();
+        limiter.submit(() -> first);
+
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+
+        for (int i = 0; i < 100_000; i++) {
+            int value = i;
+            results.add(limiter.submit(() -> CompletableFuture.completedFuture(value)));
+        }
+
+        first.complete(-1);
+
+        for (int i = 0; i < results.size(); i++) {
+            // A stack overflow in a completion callback would leave the rest waiting forever
+            assertEquals(Integer.valueOf(i), results.get(i).get(10, TimeUnit.SECONDS));
+        }
+
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testRaisingLimitStartsQueuedTasks() {
+        RequestLimiter limiter = new RequestLimiter(1);
+
+        limiter.submit(() -> new CompletableFuture<Void>());
+        CompletableFuture<Void> queued = new CompletableFuture<>();
+        limiter.submit(() -> queued);
+
+        assertEquals(1, limiter.getQueued());
+
+        limiter.setLimit(2);
+
+        assertEquals(0, limiter.getQueued());
+        assertEquals(2, limiter.getInFlight());
+    }
+}
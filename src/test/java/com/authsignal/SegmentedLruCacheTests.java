@@ -0,0 +1,152 @@
+package com.authsignal;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SegmentedLruCacheTests {
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    public void testExpiresEntriesAfterTtl() {
+        SegmentedLruCache<String, String> cache = new SegmentedLruCache<>(10, Duration.ofSeconds(30), now::get);
+
+        cache.put("a", "1");
+
+        assertEquals("1", cache.get("a"));
+
+        now.addAndGet(Duration.ofSeconds(31).toNanos());
+
+        assertNull(cache.get("a"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testScanDoesNotEvictFrequentlyReadEntries() {
+        SegmentedLruCache<String, String> cache = new SegmentedLruCache<>(10, Duration.ofMinutes(1), now::get);
+
+        for (int i = 0; i < 5; i++) {
+            cache.put("hot-" + i, "hot");
+            cache.get("hot-" + i);
+        }
+
+        for (int i = 0; i < 100; i++) {
+            cache.put("scan-" + i, "scan");
+        }
+
+        assertEquals(10, cache.size());
+        assertEquals(95, cache.getEvictionCount());
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals("hot", cache.get("hot-" + i));
+        }
+    }
+
+    @Test
+    public void testDropsValueLoadedBeforeInvalidation() {
+        SegmentedLruCache<String, String> cache = new SegmentedLruCache<>(10, Duration.ofMinutes(1), now::get);
+
+        long version = cache.version();
+
+        cache.invalidate("a");
+
+        assertFalse(cache.put("a", "stale", version));
+        assertNull(cache.get("a"));
+        assertTrue(cache.put("a", "fresh", cache.version()));
+        assertEquals("fresh", cache.get("a"));
+    }
+
+    @Test
+    public void testKeepsValueLoadedBeforeUnrelatedInvalidation() {
+        SegmentedLruCache<String, String> cache = new SegmentedLruCache<>(10, Duration.ofMinutes(1), now::get);
+        Duration ttl = Duration.ofMinutes(1);
+
+        long version = cache.version();
+
+        cache.invalidate("b");
+        cache.invalidateTagged("user-2");
+
+        assertTrue(cache.put("a", "fresh", version));
+        assertTrue(cache.put("c", "fresh", version, ttl, "user-1"));
+        assertFalse("a value tagged with an invalidated tag may be stale",
+                cache.put("d", "stale", version, ttl, "user-2"));
+
+        cache.invalidateAll();
+
+        assertFalse(cache.put("a", "stale", version));
+    }
+
+    @Test
+    public void testStripesLargeCaches() throws Exception {
+        SegmentedLruCache<String, String> cache = new SegmentedLruCache<>(10_000, Duration.ofMinutes(1), now::get);
+        Duration ttl = Duration.ofMinutes(1);
+
+        for (int i = 0; i < 1000; i++) {
+            cache.put("key-" + i, "value", cache.version(), ttl, "user-" + (i % 10));
+        }
+
+        cache.invalidateTagged("user-3");
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i % 10 == 3 ? null : "value", cache.get("key-" + i));
+        }
+
+        Thread[] threads = new Thread[4];
+
+        for (int t = 0; t < threads.length; t++) {
+            int offset = t;
+
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    String key = "key-" + (i * 7 + offset) % 30_000;
+
+                    if (cache.get(key) == null) {
+                        cache.put(key, "value", cache.version(), ttl, "user-" + (i % 10));
+                    }
+
+                    if (i % 100 == 0) {
+                        cache.invalidateTagged("user-" + (i % 10));
+                    }
+                }
+            });
+            threads[t].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(cache.size() <= 10_000);
+    }
+
+    @Test
+    public void testInvalidatesEntriesByTag() {
+        SegmentedLruCache<String, String> cache = new SegmentedLruCache<>(3, Duration.ofMinutes(1), now::get);
+        Duration ttl = Duration.ofMinutes(1);
+
+        cache.put("a", "1", cache.version(), ttl, "user-1", "token-a");
+        cache.put("b", "2", cache.version(), ttl, "user-1");
+        cache.put("c", "3", cache.version(), ttl, "user-2");
+
+        cache.invalidateTagged("user-1");
+
+        assertNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("3", cache.get("c"));
+
+        // An entry evicted and stored again is no longer reached through its old tags
+        cache.put("d", "4", cache.version(), ttl, "user-3");
+
+        for (int i = 0; i < 3; i++) {
+            cache.put("filler-" + i, "x");
+        }
+
+        cache.put("d", "5", cache.version(), ttl, "user-4");
+        cache.invalidateTagged("user-3");
+
+        assertEquals("5", cache.get("d"));
+    }
+}
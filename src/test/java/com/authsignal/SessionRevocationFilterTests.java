@@ -0,0 +1,93 @@
+package com.authsignal;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import com.authsignal.model.WebhookEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SessionRevocationFilterTests {
+    private final AtomicLong now = new AtomicLong(1_700_000_000_000L);
+
+    @Test
+    public void testReportsRevokedTokensUntilTheyExpire() {
+        SessionRevocationFilter filter = new SessionRevocationFilter(1000, 0.01, Duration.ofHours(1), now::get);
+
+        long expiresAt = now.get() / 1000 + 600;
+        filter.revokeToken("token-1", expiresAt);
+
+        assertTrue(filter.mightBeRevoked("token-1", null));
+        assertFalse(filter.mightBeRevoked("token-2", null));
+
+        now.addAndGet(Duration.ofMinutes(30).toMillis());
+
+        assertFalse("should be dropped once the token has expired", filter.mightBeRevoked("token-1", null));
+    }
+
+    @Test
+    public void testRevokesTokenFromEventUntilItsExpiry() {
+        SessionRevocationFilter filter = new SessionRevocationFilter(1000, 0.01, Duration.ofHours(1), now::get);
+
+        String claims = "{\"sub\":\"user-1\",\"exp\":" + (now.get() / 1000 + 600) + "}";
+        String accessToken = "e30." + Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(claims.getBytes(StandardCharsets.UTF_8)) + ".signature";
+
+        WebhookEvent event = new WebhookEvent();
+        event.data = new HashMap<>();
+        event.data.put("accessToken", accessToken);
+
+        filter.revoke(event);
+
+        assertTrue(filter.mightBeRevoked(accessToken, null));
+
+        now.addAndGet(Duration.ofMinutes(30).toMillis());
+
+        assertFalse("should be dropped once the token has expired", filter.mightBeRevoked(accessToken, null));
+    }
+
+    @Test
+    public void testReportsTokensOfRevokedUsers() {
+        SessionRevocationFilter filter = new SessionRevocationFilter(1000, 0.01, Duration.ofHours(1), now::get);
+
+        WebhookEvent event = new WebhookEvent();
+        event.data = new HashMap<>();
+        event.data.put("userId", "user-1");
+
+        filter.revoke(event);
+
+        assertTrue(filter.mightBeRevoked("any-token", "user-1"));
+        assertFalse(filter.mightBeRevoked("any-token", "user-2"));
+
+        now.addAndGet(Duration.ofMinutes(59).toMillis());
+
+        assertTrue(filter.mightBeRevoked("any-token", "user-1"));
+
+        now.addAndGet(Duration.ofMinutes(20).toMillis());
+
+        assertFalse(filter.mightBeRevoked("any-token", "user-1"));
+    }
+
+    @Test
+    public void testFalsePositiveRateStaysNearTarget() {
+        SessionRevocationFilter filter = new SessionRevocationFilter(10_000, 0.01, Duration.ofHours(1), now::get);
+
+        for (int i = 0; i < 10_000; i++) {
+            filter.revokeToken("revoked-" + i, 0);
+        }
+
+        int falsePositives = 0;
+
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.mightBeRevoked("valid-" + i, null)) {
+                falsePositives++;
+            }
+        }
+
+        assertTrue("false positives: " + falsePositives, falsePositives < 300);
+    }
+}
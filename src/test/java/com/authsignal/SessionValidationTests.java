@@ -0,0 +1,234 @@
+package com.authsignal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import com.authsignal.exception.AuthsignalException;
+import com.authsignal.model.*;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Tests local session validation with locally generated keys served from a stub key endpoint.
+ */
+public class SessionValidationTests {
+    private static final String ISSUER = "https://issuer.example";
+
+    private StubServer server;
+    private AuthsignalClient client;
+    private KeyPair rsaKey;
+    private KeyPair ecKey;
+
+    @Before
+    public void setUp() throws Exception {
+        KeyPairGenerator rsaGenerator = KeyPairGenerator.getInstance("RSA");
+        rsaGenerator.initialize(2048);
+        rsaKey = rsaGenerator.generateKeyPair();
+
+        KeyPairGenerator ecGenerator = KeyPairGenerator.getInstance("EC");
+        ecGenerator.initialize(new ECGenParameterSpec("secp256r1"));
+        ecKey = ecGenerator.generateKeyPair();
+
+        RSAPublicKey rsaPublic = (RSAPublicKey) rsaKey.getPublic();
+        ECPublicKey ecPublic = (ECPublicKey) ecKey.getPublic();
+
+        server = new StubServer();
+        server.respond("GET", "/keys", 200, "{\"keys\":["
+                + "{\"kty\":\"RSA\",\"kid\":\"rsa-1\",\"alg\":\"RS256\",\"use\":\"sig\",\"n\":\""
+                + encode(rsaPublic.getModulus()) + "\",\"e\":\"" + encode(rsaPublic.getPublicExponent()) + "\"},"
+                + "{\"kty\":\"EC\",\"kid\":\"ec-1\",\"crv\":\"P-256\",\"x\":\""
+                + encode(ecPublic.getW().getAffineX()) + "\",\"y\":\"" + encode(ecPublic.getW().getAffineY()) + "\"}"
+                + "]}");
+
+        AuthsignalClientOptions options = new AuthsignalClientOptions();
+        options.sessionKeysURL = server.getBaseURL() + "/keys";
+        options.sessionIssuer = ISSUER;
+        options.sessionTokenScope = "session";
+
+        client = new AuthsignalClient("secret", server.getBaseURL(), options);
+    }
+
+    @After
+    public void tearDown() {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void testValidatesTokensLocally() throws Exception {
+        long exp = System.currentTimeMillis() / 1000 + 600;
+        String claims = sessionClaims("\"sub\":\"user-1\",\"email\":\"a@example.com\",\"aud\":[\"web\"],\"exp\":" + exp
+                + ",\"custom\":{\"plan\":\"pro\"}");
+
+        ValidateSessionResponse rsa = client.validateSession(request(sign("RS256", "rsa-1", claims), "web")).get();
+
+        assertEquals("user-1", rsa.user.userId);
+        assertEquals("a@example.com", rsa.user.email);
+        assertEquals("pro", rsa.user.custom.get("plan"));
+        assertEquals(exp, rsa.expiresAt);
+
+        ValidateSessionResponse ec = client.validateSession(request(sign("ES256", "ec-1", claims), null)).get();
+
+        assertEquals("user-1", ec.user.userId);
+        assertEquals(1, server.getRequestCount("GET", "/keys"));
+        assertEquals(0, server.getRequestCount("POST", "/sessions/validate"));
+    }
+
+    @Test
+    public void testRejectsInvalidTokensLocally() throws Exception {
+        long now = System.currentTimeMillis() / 1000;
+        String valid = sign("RS256", "rsa-1",
+                sessionClaims("\"sub\":\"user-1\",\"aud\":\"web\",\"exp\":" + (now + 600)));
+        String expired = sign("RS256", "rsa-1", sessionClaims("\"sub\":\"user-1\",\"exp\":" + (now - 60)));
+
+        assertInvalid(request(expired, null));
+        assertInvalid(request(valid.substring(0, valid.length() - 4) + "AAAA", null));
+        assertInvalid(request(valid, "mobile"));
+
+        assertEquals(0, server.getRequestCount("POST", "/sessions/validate"));
+    }
+
+    @Test
+    public void testAllowsClockSkew() throws Exception {
+        long now = System.currentTimeMillis() / 1000;
+        String skewed = sign("RS256", "rsa-1",
+                sessionClaims("\"sub\":\"user-1\",\"exp\":" + (now - 5) + ",\"nbf\":" + (now + 5)));
+        String early = sign("RS256", "rsa-1",
+                sessionClaims("\"sub\":\"user-1\",\"exp\":" + (now + 600) + ",\"nbf\":" + (now + 60)));
+
+        assertEquals("user-1", client.validateSession(request(skewed, null)).get().user.userId);
+        assertInvalid(request(early, null));
+    }
+
+    @Test
+    public void testSendsTokensThatAreNotSessionTokensToApi() throws Exception {
+        server.respond("POST", "/sessions/validate", 200, "{\"user\":{\"userId\":\"remote\"},\"expiresAt\":1}");
+
+        String claims = "\"sub\":\"user-1\",\"exp\":" + (System.currentTimeMillis() / 1000 + 600);
+        String[] tokens = {
+                sign("RS256", "rsa-1", "{\"scope\":\"session\"," + claims + "}"),
+                sign("RS256", "rsa-1", "{\"iss\":\"https://other.example\",\"scope\":\"session\"," + claims + "}"),
+                sign("RS256", "rsa-1", "{\"iss\":\"" + ISSUER + "\",\"scope\":\"refresh\"," + claims + "}"),
+                sign("RS256", "rsa-1", "refresh+jwt", sessionClaims(claims)),
+        };
+
+        for (String token : tokens) {
+            assertEquals("remote", client.validateSession(request(token, null)).get().user.userId);
+        }
+
+        assertEquals(tokens.length, server.getRequestCount("POST", "/sessions/validate"));
+    }
+
+    @Test
+    public void testRequiresIssuerWithSessionKeys() {
+        AuthsignalClientOptions options = new AuthsignalClientOptions();
+        options.sessionKeysURL = server.getBaseURL() + "/keys";
+
+        try {
+            new AuthsignalClient("secret", server.getBaseURL(), options);
+            fail("should throw IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("sessionIssuer"));
+        }
+    }
+
+    @Test
+    public void testFallsBackToApiForUnknownKey() throws Exception {
+        server.respond("POST", "/sessions/validate", 200, "{\"user\":{\"userId\":\"remote\"},\"expiresAt\":1}");
+
+        String claims = sessionClaims("\"sub\":\"user-1\",\"exp\":" + (System.currentTimeMillis() / 1000 + 600));
+
+        ValidateSessionResponse response = client.validateSession(request(sign("RS256", "rsa-2", claims), null)).get();
+
+        assertEquals("remote", response.user.userId);
+        assertEquals(1, server.getRequestCount("POST", "/sessions/validate"));
+    }
+
+    @Test
+    public void testConfirmsRevokedSessionsWithApi() throws Exception {
+        server.respond("POST", "/sessions/revoke", 200, "");
+        server.respond("POST", "/sessions/validate", 401,
+                "{\"error\":\"invalid_token\",\"errorDescription\":\"The session has been revoked.\"}");
+
+        String claims = sessionClaims("\"sub\":\"user-1\",\"exp\":" + (System.currentTimeMillis() / 1000 + 600));
+        String revoked = sign("RS256", "rsa-1", claims);
+        String other = sign("ES256", "ec-1", claims.replace("user-1", "user-2"));
+
+        RevokeSessionRequest revoke = new RevokeSessionRequest();
+        revoke.accessToken = revoked;
+        client.revokeSession(revoke).get();
+
+        assertInvalid(request(revoked, null));
+        assertEquals("user-2", client.validateSession(request(other, null)).get().user.userId);
+        assertEquals(1, server.getRequestCount("POST", "/sessions/validate"));
+    }
+
+    private void assertInvalid(ValidateSessionRequest request) throws Exception {
+        try {
+            client.validateSession(request).get();
+
+            fail("should throw ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof AuthsignalException);
+            assertEquals(401, ((AuthsignalException) e.getCause()).getStatusCode());
+        }
+    }
+
+    private static ValidateSessionRequest request(String accessToken, String clientId) {
+        ValidateSessionRequest request = new ValidateSessionRequest();
+        request.accessToken = accessToken;
+        request.clientIds = clientId != null ? new String[] { clientId } : null;
+        return request;
+    }
+
+    /**
+     * Returns the claims of a session access token from the test issuer, followed by the given ones.
+     */
+    private static String sessionClaims(String claims) {
+        return "{\"iss\":\"" + ISSUER + "\",\"scope\":\"session\"," + claims + "}";
+    }
+
+    private String sign(String alg, String kid, String claims) throws Exception {
+        return sign(alg, kid, "JWT", claims);
+    }
+
+    private String sign(String alg, String kid, String typ, String claims) throws Exception {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+
+        String header = "{\"alg\":\"" + alg + "\",\"kid\":\"" + kid + "\",\"typ\":\"" + typ + "\"}";
+        String content = encoder.encodeToString(header.getBytes(StandardCharsets.UTF_8)) + "."
+                + encoder.encodeToString(claims.getBytes(StandardCharsets.UTF_8));
+
+        PrivateKey key = alg.equals("RS256") ? rsaKey.getPrivate() : ecKey.getPrivate();
+        Signature signature = Signature.getInstance(
+                alg.equals("RS256") ? "SHA256withRSA" : "SHA256withECDSAinP1363Format");
+        signature.initSign(key);
+        signature.update(content.getBytes(StandardCharsets.US_ASCII));
+
+        return content + "." + encoder.encodeToString(signature.sign());
+    }
+
+    private static String encode(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+
+        // Drop the sign byte that BigInteger adds to positive values with the high bit set
+        if (bytes.length > 1 && bytes[0] == 0) {
+            bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
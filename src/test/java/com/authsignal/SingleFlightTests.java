@@ -0,0 +1,69 @@
+package com.authsignal;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SingleFlightTests {
+    @Test
+    public void testCoalescesConcurrentCalls() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        CompletableFuture<String> operation = new CompletableFuture<>();
+        AtomicInteger started = new AtomicInteger();
+
+        CompletableFuture<String> first = singleFlight.execute("a", () -> {
+            started.incrementAndGet();
+            return operation;
+        });
+        CompletableFuture<String> second = singleFlight.execute("a", () -> {
+            started.incrementAndGet();
+            return operation;
+        });
+
+        assertEquals(1, started.get());
+        assertEquals(1, singleFlight.getInFlightCount());
+
+        // Cancelling one caller must leave the shared operation and the other caller running
+        first.cancel(true);
+
+        assertFalse(operation.isCancelled());
+
+        operation.complete("value");
+
+        assertEquals("value", second.get());
+        assertEquals(2, singleFlight.getCallCount());
+        assertEquals(1, singleFlight.getCoalescedCount());
+        assertEquals(0, singleFlight.getInFlightCount());
+
+        singleFlight.execute("a", () -> {
+            started.incrementAndGet();
+            return CompletableFuture.completedFuture("next");
+        });
+
+        assertEquals("a completed key should start a new operation", 2, started.get());
+    }
+
+    @Test
+    public void testSharesFailures() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        CompletableFuture<String> operation = new CompletableFuture<>();
+
+        CompletableFuture<String> first = singleFlight.execute("a", () -> operation);
+        CompletableFuture<String> second = singleFlight.execute("a", () -> operation);
+
+        operation.completeExceptionally(new IllegalStateException("failed"));
+
+        for (CompletableFuture<String> future : new CompletableFuture[] { first, second }) {
+            try {
+                future.get();
+
+                fail("should throw ExecutionException");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.authsignal;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An in-process HTTP server for tests which answers requests with canned responses.
+ */
+class StubServer implements AutoCloseable {
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, Handler> handlers = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> requestCounts = new ConcurrentHashMap<>();
+    private final List<String> requestBodies = new CopyOnWriteArrayList<>();
+
+    interface Handler {
+        Response handle(String body) throws Exception;
+    }
+
+    /**
+     * Writes a response body in parts, for tests that need the client to see it arrive over time.
+     */
+    interface BodyWriter {
+        void write(OutputStream out) throws Exception;
+    }
+
+    static class Response {
+        final int statusCode;
+        final String body;
+        final BodyWriter writer;
+        final Map<String, String> headers = new HashMap<>();
+
+        Response(int statusCode, String body) {
+            this.statusCode = statusCode;
+            this.body = body;
+            this.writer = null;
+        }
+
+        Response(int statusCode, BodyWriter writer) {
+            this.statusCode = statusCode;
+            this.body = "";
+            this.writer = writer;
+        }
+
+        Response header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+    }
+
+    StubServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        executor = Executors.newCachedThreadPool();
+
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    String getBaseURL() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1";
+    }
+
+    /**
+     * Answers requests to the given method and path, including any query string, with a fixed
+     * status and body.
+     */
+    StubServer respond(String method, String path, int statusCode, String body) {
+        return respond(method, path, requestBody -> new Response(statusCode, body));
+    }
+
+    StubServer respond(String method, String path, Handler handler) {
+        handlers.put(method + " /v1" + path, handler);
+        return this;
+    }
+
+    int getRequestCount(String method, String path) {
+        AtomicInteger count = requestCounts.get(method + " /v1" + path);
+        return count != null ? count.get() : 0;
+    }
+
+    List<String> getRequestBodies() {
+        return requestBodies;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String key = exchange.getRequestMethod() + " " + exchange.getRequestURI();
+
+        requestCounts.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+
+        String requestBody = readBody(exchange.getRequestBody());
+        requestBodies.add(requestBody);
+
+        Handler handler = handlers.get(key);
+        Response response;
+
+        try {
+            response = handler != null
+                    ? handler.handle(requestBody)
+                    : new Response(404, "{\"error\":\"not_found\"}");
+        } catch (Exception ex) {
+            response = new Response(500, "{\"error\":\"stub_error\",\"errorDescription\":\"" + ex + "\"}");
+        }
+
+        byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+
+        for (Map.Entry<String, String> header : response.headers.entrySet()) {
+            exchange.getResponseHeaders().add(header.getKey(), header.getValue());
+        }
+
+        if (response.writer != null) {
+            // A length of zero sends the body chunked, as the writer produces it
+            exchange.sendResponseHeaders(response.statusCode, 0);
+
+            try (OutputStream out = exchange.getResponseBody()) {
+                response.writer.write(out);
+            } catch (IOException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new IOException(ex);
+            }
+
+            return;
+        }
+
+        if (body.length == 0) {
+            // The server finishes a response without a body itself. Closing the response stream as
+            // well would finish the exchange twice and can make the server drop the kept-alive
+            // connection, which the client then fails on when it reuses it.
+            exchange.sendResponseHeaders(response.statusCode, -1);
+            return;
+        }
+
+        exchange.sendResponseHeaders(response.statusCode, body.length);
+
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,183 @@
+package com.authsignal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import com.authsignal.model.TrackRequest;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+public class TrackOutboxTests {
+    private StubServer server;
+    private AuthsignalClient client;
+    private Path directory;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubServer();
+        client = new AuthsignalClient("secret", server.getBaseURL());
+        directory = Files.createTempDirectory("track-outbox");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+
+        Files.deleteIfExists(directory);
+    }
+
+    @Test
+    public void testDeliversAcrossSegments() throws Exception {
+        server.respond("POST", "/users/user-1/actions/signIn", 200, "{\"state\":\"ALLOW\"}");
+
+        TrackOutboxOptions options = new TrackOutboxOptions();
+        options.segmentSize = 1024;
+
+        try (TrackOutbox outbox = new TrackOutbox(client, directory, options)) {
+            for (int i = 0; i < 50; i++) {
+                outbox.enqueue(request());
+            }
+
+            awaitDepth(outbox, 0);
+
+            assertEquals(50, outbox.getDeliveredCount());
+            assertEquals(50, server.getRequestCount("POST", "/users/user-1/actions/signIn"));
+            assertTrue("delivered segments should be deleted", outbox.getDiskUsageBytes() <= 1024);
+        }
+    }
+
+    @Test
+    public void testRecoversPendingRecordsAfterRestart() throws Exception {
+        AtomicBoolean available = new AtomicBoolean(false);
+
+        server.respond("POST", "/users/user-1/actions/signIn", body -> available.get()
+                ? new StubServer.Response(200, "{\"state\":\"ALLOW\"}")
+                : new StubServer.Response(503, "{\"error\":\"unavailable\"}"));
+
+        TrackOutboxOptions options = new TrackOutboxOptions();
+        options.retryDelay = Duration.ofMinutes(1);
+
+        List<String> keys = new ArrayList<>();
+
+        try (TrackOutbox outbox = new TrackOutbox(client, directory, options)) {
+            for (int i = 0; i < 5; i++) {
+                keys.add(outbox.enqueue(request()));
+            }
+
+            assertEquals(5, outbox.getQueueDepth());
+        }
+
+        available.set(true);
+        server.getRequestBodies().clear();
+
+        try (TrackOutbox outbox = new TrackOutbox(client, directory, options)) {
+            awaitDepth(outbox, 0);
+
+            assertEquals(5, outbox.getDeliveredCount());
+        }
+
+        for (String key : keys) {
+            assertTrue("replay should reuse " + key,
+                    server.getRequestBodies().stream().anyMatch(body -> body.contains(key)));
+        }
+    }
+
+    @Test
+    public void testMovesAsideRecordsThatKeepFailing() throws Exception {
+        // A response the client cannot decode fails the same way on every attempt
+        server.respond("POST", "/users/user-1/actions/signIn", 200, "not json");
+
+        TrackOutboxOptions options = new TrackOutboxOptions();
+        options.retryDelay = Duration.ofMillis(1);
+        options.maxAttempts = 3;
+
+        try (TrackOutbox outbox = new TrackOutbox(client, directory, options)) {
+            String key = outbox.enqueue(request());
+
+            awaitDepth(outbox, 0);
+
+            assertEquals(1, outbox.getFailedCount());
+            assertEquals(3, server.getRequestCount("POST", "/users/user-1/actions/signIn"));
+
+            List<String> failed = Files.readAllLines(directory.resolve("track-failed.ndjson"));
+
+            assertEquals(1, failed.size());
+            assertTrue(failed.get(0).contains(key));
+        }
+    }
+
+    @Test
+    public void testRejectsRecordsOnceFull() throws Exception {
+        server.respond("POST", "/users/user-1/actions/signIn", 503, "{\"error\":\"unavailable\"}");
+
+        TrackOutboxOptions options = new TrackOutboxOptions();
+        options.segmentSize = 1024;
+        options.maxDiskBytes = 2048;
+        options.retryDelay = Duration.ofMinutes(1);
+
+        try (TrackOutbox outbox = new TrackOutbox(client, directory, options)) {
+            int accepted = 0;
+
+            try {
+                for (int i = 0; i < 100; i++) {
+                    outbox.enqueue(request());
+                    accepted++;
+                }
+
+                fail("should throw IllegalStateException");
+            } catch (IllegalStateException e) {
+                assertEquals("The outbox is full.", e.getMessage());
+            }
+
+            assertTrue(accepted > 0);
+            assertEquals(accepted, outbox.getQueueDepth());
+            assertEquals(2048, outbox.getDiskUsageBytes());
+        }
+    }
+
+    @Test
+    public void testKeepsRecordsPendingWhenClientIsClosed() throws Exception {
+        TrackOutboxOptions options = new TrackOutboxOptions();
+        options.maxAttempts = 1;
+
+        // Every send then fails before it returns, and drains the next record straight away
+        client.close();
+
+        try (TrackOutbox outbox = new TrackOutbox(client, directory, options)) {
+            for (int i = 0; i < 1000; i++) {
+                outbox.enqueue(request());
+            }
+
+            assertEquals("records are kept for the next outbox", 1000, outbox.getQueueDepth());
+            assertEquals(0, outbox.getFailedCount());
+        }
+    }
+
+    private static TrackRequest request() {
+        TrackRequest request = new TrackRequest();
+        request.userId = "user-1";
+        request.action = "signIn";
+        return request;
+    }
+
+    private static void awaitDepth(TrackOutbox outbox, long depth) throws InterruptedException {
+        for (int i = 0; i < 500 && outbox.getQueueDepth() != depth; i++) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(depth, outbox.getQueueDepth());
+    }
+}
@@ -0,0 +1,108 @@
+package com.authsignal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import com.authsignal.exception.AuthsignalException;
+import com.authsignal.model.QueryUsersRequest;
+import com.authsignal.model.UserExportRecord;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class UserExporterTests {
+    private StubServer server;
+    private AuthsignalClient client;
+    private Path directory;
+    private Path output;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubServer();
+        client = new AuthsignalClient("secret", server.getBaseURL());
+        directory = Files.createTempDirectory("user-export");
+        output = directory.resolve("users.ndjson");
+
+        server.respond("GET", "/users", 200,
+                "{\"users\":[{\"userId\":\"u1\"},{\"userId\":\"u2\"}],\"lastEvaluatedUserId\":\"u2\"}");
+        server.respond("GET", "/users?lastEvaluatedUserId=u2", 200,
+                "{\"users\":[{\"userId\":\"u3\"},{\"userId\":\"u4\"}],\"lastEvaluatedUserId\":\"u4\"}");
+        server.respond("GET", "/users?lastEvaluatedUserId=u4", 200, "{\"users\":[{\"userId\":\"u5\"}]}");
+
+        for (int i = 1; i <= 5; i++) {
+            server.respond("GET", "/users/u" + i + "/authenticators", 200,
+                    "[{\"userAuthenticatorId\":\"a" + i + "\",\"verificationMethod\":\"SMS\"}]");
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+
+        Files.deleteIfExists(output.resolveSibling("users.ndjson.checkpoint"));
+        Files.deleteIfExists(output);
+        Files.deleteIfExists(directory);
+    }
+
+    @Test
+    public void testExportsUsersWithAuthenticators() throws Exception {
+        UserExportOptions options = new UserExportOptions();
+        options.maxConcurrency = 2;
+
+        UserExporter exporter = new UserExporter(client, output, options);
+        exporter.export(new QueryUsersRequest());
+
+        List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+
+        assertEquals(5, lines.size());
+
+        for (int i = 0; i < 5; i++) {
+            UserExportRecord record = client.getCodec().fromJson(lines.get(i), UserExportRecord.class);
+
+            assertEquals("u" + (i + 1), record.user.userId);
+            assertEquals("a" + (i + 1), record.authenticators[0].userAuthenticatorId);
+        }
+
+        assertEquals(5, exporter.getRowCount());
+        assertEquals(Files.size(output), exporter.getBytesWritten());
+        assertFalse(Files.exists(output.resolveSibling("users.ndjson.checkpoint")));
+    }
+
+    @Test
+    public void testResumesFromCheckpoint() throws Exception {
+        AtomicBoolean available = new AtomicBoolean(false);
+
+        server.respond("GET", "/users/u4/authenticators", body -> available.get()
+                ? new StubServer.Response(200, "[]")
+                : new StubServer.Response(400, "{\"error\":\"invalid_request\"}"));
+
+        UserExporter exporter = new UserExporter(client, output);
+
+        try {
+            exporter.export(new QueryUsersRequest());
+
+            fail("should throw AuthsignalException");
+        } catch (AuthsignalException e) {
+            assertEquals(400, e.getStatusCode());
+        }
+
+        assertTrue(Files.exists(output.resolveSibling("users.ndjson.checkpoint")));
+
+        available.set(true);
+        exporter.export(new QueryUsersRequest());
+
+        List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+
+        assertEquals(5, lines.size());
+        assertTrue(lines.get(2).contains("\"u3\""));
+        assertEquals("only the remaining pages should be exported again", 3, exporter.getRowCount());
+        assertEquals(1, server.getRequestCount("GET", "/users"));
+        assertEquals(1, server.getRequestCount("GET", "/users/u1/authenticators"));
+    }
+}
@@ -0,0 +1,268 @@
+package com.authsignal;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import com.authsignal.model.WebhookEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+public class WebhookDispatcherTests {
+    private final Webhook webhook = new Webhook("local_secret");
+
+    @Test
+    public void testDispatchesByEventType() throws Exception {
+        CountDownLatch handled = new CountDownLatch(1);
+        List<String> ids = Collections.synchronizedList(new ArrayList<>());
+
+        try (WebhookDispatcher dispatcher = new WebhookDispatcher(webhook, 2, 10)) {
+            dispatcher.on("email.created", event -> {
+                ids.add(event.id);
+                handled.countDown();
+            });
+
+            String payload = "{\"version\":1,\"id\":\"event-1\",\"type\":\"email.created\",\"tenantId\":\"t\"}";
+
+            assertEquals(WebhookDispatcher.Status.ACCEPTED,
+                    dispatcher.dispatch(new WebhookPayload(payload, sign(payload))));
+            assertTrue(handled.await(5, TimeUnit.SECONDS));
+            assertEquals(Collections.singletonList("event-1"), ids);
+
+            String other = "{\"version\":1,\"id\":\"event-2\",\"type\":\"sms.created\"}";
+
+            assertEquals(WebhookDispatcher.Status.UNHANDLED,
+                    dispatcher.dispatch(new WebhookPayload(other, sign(other))));
+            assertEquals(WebhookDispatcher.Status.INVALID,
+                    dispatcher.dispatch(new WebhookPayload(payload, "t=1,v2=invalid")));
+        }
+    }
+
+    @Test
+    public void testKeepsOrderPerUser() throws Exception {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+        WebhookDispatcher dispatcher = new WebhookDispatcher(webhook, 4, 1000);
+        dispatcher.on("email.created", event -> order.add(event.data.get("userId") + ":" + event.id));
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(WebhookDispatcher.Status.ACCEPTED, dispatcher.dispatch(event("user-" + (i % 3), i)));
+        }
+
+        dispatcher.close();
+
+        assertEquals(100, order.size());
+
+        for (int user = 0; user < 3; user++) {
+            int previous = -1;
+
+            for (String entry : order) {
+                if (entry.startsWith("user-" + user + ":")) {
+                    int id = Integer.parseInt(entry.substring(entry.indexOf(':') + 1));
+                    assertTrue("events for a user should be handled in order", id > previous);
+                    previous = id;
+                }
+            }
+        }
+
+        assertEquals(100, dispatcher.getStats("email.created").getHandledCount());
+    }
+
+    @Test
+    public void testRejectsWhenQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+
+        WebhookDispatcher dispatcher = new WebhookDispatcher(webhook, 1, 1);
+        dispatcher.on("email.created", event -> {
+            started.countDown();
+            release.await();
+            throw new IllegalStateException("handler failed");
+        });
+
+        assertEquals(WebhookDispatcher.Status.ACCEPTED, dispatcher.dispatch(event("user", 0)));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(WebhookDispatcher.Status.ACCEPTED, dispatcher.dispatch(event("user", 1)));
+
+        WebhookDispatcher.Status status = dispatcher.dispatch(event("user", 2));
+
+        assertEquals(WebhookDispatcher.Status.REJECTED, status);
+        assertTrue(status.isRetryable());
+        assertEquals(503, status.getHttpStatus());
+        assertEquals(1, dispatcher.getQueueDepth());
+        assertEquals(1, dispatcher.getRejectedCount());
+
+        release.countDown();
+        dispatcher.close();
+
+        assertEquals(2, dispatcher.getStats("email.created").getFailedCount());
+        assertEquals(WebhookDispatcher.Status.REJECTED, dispatcher.dispatch(event("user", 3)));
+    }
+
+    @Test
+    public void testRetriedDeliveryIsNotDuplicateAfterRejection() throws Exception {
+        Webhook replayWebhook = new Webhook("local_secret");
+        replayWebhook.setReplayCache(new WebhookReplayCache(WebhookReplayCache.KeyStrategy.EVENT_ID));
+
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+
+        try (WebhookDispatcher dispatcher = new WebhookDispatcher(replayWebhook, 1, 1)) {
+            String unhandled = "{\"version\":1,\"id\":\"event-0\",\"type\":\"sms.created\"}";
+
+            assertEquals(WebhookDispatcher.Status.UNHANDLED,
+                    dispatcher.dispatch(new WebhookPayload(unhandled, sign(unhandled))));
+            assertEquals(WebhookDispatcher.Status.UNHANDLED,
+                    dispatcher.dispatch(new WebhookPayload(unhandled, sign(unhandled))));
+
+            dispatcher.on("email.created", event -> {
+                started.countDown();
+                release.await();
+            });
+
+            assertEquals(WebhookDispatcher.Status.ACCEPTED, dispatcher.dispatch(event("user", 1)));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            assertEquals(WebhookDispatcher.Status.ACCEPTED, dispatcher.dispatch(event("user", 2)));
+
+            String payload = "{\"version\":1,\"id\":\"event-3\",\"type\":\"email.created\"}";
+
+            assertEquals(WebhookDispatcher.Status.REJECTED,
+                    dispatcher.dispatch(new WebhookPayload(payload, sign(payload))));
+
+            release.countDown();
+
+            // The retried delivery is queued once there is room, and only then remembered
+            WebhookDispatcher.Status status;
+
+            do {
+                status = dispatcher.dispatch(new WebhookPayload(payload, sign(payload)));
+            } while (status == WebhookDispatcher.Status.REJECTED);
+
+            assertEquals(WebhookDispatcher.Status.ACCEPTED, status);
+            assertEquals(WebhookDispatcher.Status.DUPLICATE,
+                    dispatcher.dispatch(new WebhookPayload(payload, sign(payload))));
+        }
+    }
+
+    @Test
+    public void testHandlesEveryAcceptedEventWhenClosedConcurrently() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            LongAdder handled = new LongAdder();
+            LongAdder accepted = new LongAdder();
+
+            WebhookDispatcher dispatcher = new WebhookDispatcher(webhook, 2, 10_000);
+            dispatcher.on("email.created", event -> handled.increment());
+
+            Thread producer = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    if (dispatcher.dispatch(event("user-" + (i % 5), i)) == WebhookDispatcher.Status.ACCEPTED) {
+                        accepted.increment();
+                    }
+                }
+            });
+
+            producer.start();
+            Thread.sleep(1);
+            dispatcher.close();
+            producer.join();
+
+            assertEquals(accepted.sum(), handled.sum());
+        }
+    }
+
+    @Test
+    public void testReportsFailedEventsAndKeepsLaneRunningAfterErrors() throws Exception {
+        List<String> failures = Collections.synchronizedList(new ArrayList<>());
+        LongAdder handled = new LongAdder();
+
+        WebhookDispatcher dispatcher = new WebhookDispatcher(webhook, 1, 10);
+        dispatcher.on("email.created", event -> {
+            if (event.id.equals("0")) {
+                throw new StackOverflowError();
+            }
+
+            if (event.id.equals("1")) {
+                throw new IllegalStateException("handler failed");
+            }
+
+            handled.increment();
+        });
+        dispatcher.onError((event, error) -> {
+            failures.add(event.id + ":" + error.getClass().getSimpleName());
+            throw new IllegalStateException("error handler failed");
+        });
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(WebhookDispatcher.Status.ACCEPTED, dispatcher.dispatch(event("user", i)));
+        }
+
+        dispatcher.close();
+
+        assertEquals(1, handled.sum());
+        assertEquals(Arrays.asList("0:StackOverflowError", "1:IllegalStateException"), failures);
+        assertEquals(2, dispatcher.getStats("email.created").getFailedCount());
+    }
+
+    @Test
+    public void testDoesNotQueueEventsWithoutType() throws Exception {
+        try (WebhookDispatcher dispatcher = new WebhookDispatcher(webhook, 1, 10)) {
+            dispatcher.on("email.created", event -> {
+            });
+
+            WebhookEvent untyped = event("user", 0);
+            untyped.type = null;
+
+            assertEquals(WebhookDispatcher.Status.INVALID, dispatcher.dispatch((WebhookEvent) null));
+            assertEquals(WebhookDispatcher.Status.UNHANDLED, dispatcher.dispatch(untyped));
+            assertEquals(WebhookDispatcher.Status.INVALID,
+                    dispatcher.dispatch(new WebhookPayload("null", sign("null"))));
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void testCloseCanBeCalledAgain() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+
+        WebhookDispatcher dispatcher = new WebhookDispatcher(webhook, 1, 1);
+        dispatcher.on("email.created", event -> release.await());
+
+        dispatcher.dispatch(event("user", 0));
+        dispatcher.dispatch(event("user", 1));
+        release.countDown();
+
+        dispatcher.close();
+        dispatcher.close();
+
+        assertEquals(WebhookDispatcher.Status.REJECTED, dispatcher.dispatch(event("user", 2)));
+    }
+
+    private static WebhookEvent event(String userId, int id) {
+        WebhookEvent event = new WebhookEvent();
+        event.id = Integer.toString(id);
+        event.type = "email.created";
+        event.tenantId = "tenant";
+        event.data = new HashMap<>();
+        event.data.put("userId", userId);
+        return event;
+    }
+
+    private static String sign(String payload) throws Exception {
+        long timestamp = System.currentTimeMillis() / 1000;
+
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec("local_secret".getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        byte[] digest = mac.doFinal((timestamp + "." + payload).getBytes(StandardCharsets.UTF_8));
+
+        return "t=" + timestamp + ",v2=" + Base64.getEncoder().withoutPadding().encodeToString(digest);
+    }
+}
@@ -0,0 +1,114 @@
+package com.authsignal;
+
+import com.authsignal.model.WebhookEvent;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+public class WebhookReplayCacheTests {
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+
+    @Test
+    public void testDetectsDuplicatesWithinWindow() {
+        WebhookReplayCache cache = new WebhookReplayCache(Duration.ofMinutes(5),
+                WebhookReplayCache.KeyStrategy.EVENT_ID, 6, 100, now::get);
+
+        assertFalse(cache.isDuplicate("a"));
+        assertTrue(cache.isDuplicate("a"));
+
+        now.addAndGet(Duration.ofMinutes(4).toMillis());
+
+        assertTrue("should still be remembered inside the window", cache.isDuplicate("a"));
+        assertFalse(cache.isDuplicate("b"));
+        assertEquals(2, cache.getDuplicateCount());
+    }
+
+    @Test
+    public void testExpiresBucketsAfterWindow() {
+        WebhookReplayCache cache = new WebhookReplayCache(Duration.ofMinutes(5),
+                WebhookReplayCache.KeyStrategy.EVENT_ID, 6, 100, now::get);
+
+        assertFalse(cache.isDuplicate("a"));
+
+        now.addAndGet(Duration.ofMinutes(7).toMillis());
+
+        assertFalse("should be forgotten after the window", cache.isDuplicate("a"));
+    }
+
+    @Test
+    public void testBoundsEntriesPerBucket() {
+        WebhookReplayCache cache = new WebhookReplayCache(Duration.ofMinutes(5),
+                WebhookReplayCache.KeyStrategy.EVENT_ID, 6, 3, now::get);
+
+        for (int i = 0; i < 5; i++) {
+            assertFalse(cache.isDuplicate("key-" + i));
+        }
+
+        assertEquals(3, cache.size());
+        assertEquals(2, cache.getOverflowCount());
+        assertTrue(cache.isDuplicate("key-0"));
+    }
+
+    @Test
+    public void testWebhookReportsDuplicates() throws Exception {
+        Webhook webhook = new Webhook("local_secret");
+        webhook.setReplayCache(new WebhookReplayCache(WebhookReplayCache.KeyStrategy.EVENT_ID));
+
+        long timestamp = System.currentTimeMillis() / 1000;
+        String payload = "{\"version\":1,\"id\":\"event-1\",\"type\":\"email.created\"}";
+
+        WebhookResult first = webhook.verifyEvent(new WebhookPayload(payload, sign(timestamp, payload)));
+        WebhookResult redelivery = webhook.verifyEvent(new WebhookPayload(payload, sign(timestamp + 30, payload)));
+
+        assertTrue(first.isValid());
+        assertFalse(first.isDuplicate());
+        assertTrue(redelivery.isValid());
+        assertTrue("redelivery with a new signature should be a duplicate", redelivery.isDuplicate());
+    }
+
+    @Test
+    public void testConstructEventRejectsRedeliveries() throws Exception {
+        Webhook webhook = new Webhook("local_secret");
+        webhook.setReplayCache(new WebhookReplayCache(WebhookReplayCache.KeyStrategy.EVENT_ID));
+
+        long timestamp = System.currentTimeMillis() / 1000;
+        String payload = "{\"version\":1,\"id\":\"event-1\",\"type\":\"email.created\"}";
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+
+        assertEquals("event-1", webhook.constructEvent(payload, sign(timestamp, payload)).id);
+
+        List<Callable<WebhookEvent>> redeliveries = Arrays.asList(
+                () -> webhook.constructEvent(payload, sign(timestamp + 30, payload)),
+                () -> webhook.constructEvent(bytes, sign(timestamp + 30, payload)),
+                () -> webhook.constructEvent(ByteBuffer.wrap(bytes), sign(timestamp + 30, payload)),
+                () -> webhook.constructEvent(new ByteArrayInputStream(bytes), sign(timestamp + 30, payload)));
+
+        for (Callable<WebhookEvent> redelivery : redeliveries) {
+            try {
+                redelivery.call();
+                fail("redelivery should be rejected");
+            } catch (Webhook.InvalidSignatureException ex) {
+                assertEquals(Webhook.FailureReason.DUPLICATE, ex.getReason());
+            }
+        }
+    }
+
+    private static String sign(long timestamp, String payload) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec("local_secret".getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        byte[] digest = mac.doFinal((timestamp + "." + payload).getBytes(StandardCharsets.UTF_8));
+
+        return "t=" + timestamp + ",v2=" + Base64.getEncoder().withoutPadding().encodeToString(digest);
+    }
+}
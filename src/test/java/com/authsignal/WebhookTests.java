@@ -6,9 +6,21 @@ import static org.junit.Assert.*;
 import com.authsignal.Webhook.InvalidSignatureException;
 import com.authsignal.model.WebhookEvent;
 
+import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 
 public class WebhookTests {
     private Webhook webhook;
@@ -48,6 +60,22 @@ public class WebhookTests {
         }
     }
 
+    @Test
+    public void testMissingSignature() {
+        for (String signature : new String[] { null, "" }) {
+            try {
+                webhook.constructEvent("{}", signature);
+                fail("Expected an InvalidSignatureException to be thrown");
+            } catch (InvalidSignatureException ex) {
+                assertEquals(Webhook.FailureReason.INVALID_FORMAT, ex.getReason());
+            }
+
+            WebhookResult result = webhook.verifyEvent(new WebhookPayload("{}", signature));
+
+            assertEquals(Webhook.FailureReason.INVALID_FORMAT, result.getFailureReason());
+        }
+    }
+
     @Test
     public void testTimestampToleranceError() {
         String payload = "{}";
@@ -145,4 +173,199 @@ public class WebhookTests {
             fail("Expected a valid event to be constructed");
         }
     }
+
+    @Test
+    public void testValidSignatureWithRawBody() {
+        String payload = "{"
+                + "\"version\":1,"
+                + "\"id\":\"bc1598bc-e5d6-4c69-9afb-1a6fe3469d6e\","
+                + "\"source\":\"https://authsignal.com\","
+                + "\"time\":\"2025-02-20T01:51:56.070Z\","
+                + "\"tenantId\":\"7752d28e-e627-4b1b-bb81-b45d68d617bc\","
+                + "\"type\":\"email.created\","
+                + "\"data\":{"
+                + "\"to\":\"chris@authsignal.com\","
+                + "\"code\":\"157743\","
+                + "\"userId\":\"b9f74d36-fcfc-4efc-87f1-3664ab5a7fb0\","
+                + "\"actionCode\":\"accountRecovery\","
+                + "\"idempotencyKey\":\"ba8c1a7c-775d-4dff-9abe-be798b7b8bb9\","
+                + "\"verificationMethod\":\"EMAIL_OTP\""
+                + "}"
+                + "}";
+
+        byte[] body = payload.getBytes(StandardCharsets.UTF_8);
+
+        // Ignore tolerance window
+        int tolerance = -1;
+
+        String signature = "t=1740016316,v2=NwFcIT68pK7g+m365Jj4euXj/ke3GSnkTpMPcRVi5q4";
+
+        try {
+            WebhookEvent event = webhook.constructEvent(body, signature, tolerance);
+
+            assertEquals("accountRecovery", event.data.get("actionCode"));
+
+            ByteBuffer buffer = ByteBuffer.wrap(body);
+
+            WebhookEvent bufferEvent = webhook.constructEvent(buffer, signature, tolerance);
+
+            assertEquals("accountRecovery", bufferEvent.data.get("actionCode"));
+            assertEquals("buffer position should be unchanged", 0, buffer.position());
+        } catch (InvalidSignatureException ex) {
+            fail("Expected a valid event to be constructed");
+        }
+    }
+
+    @Test
+    public void testMalformedSignatureDoesNotPreventMatch() throws Exception {
+        Webhook localWebhook = new Webhook("local_secret");
+
+        String payload = "{\"version\":1,\"type\":\"email.created\",\"data\":{\"to\":\"a@example.com\"}}";
+        long timestamp = System.currentTimeMillis() / 1000;
+
+        String signature = "t=" + timestamp + ",v2=not*base64,v2=" + sign("local_secret", timestamp, payload);
+
+        WebhookEvent event = localWebhook.constructEvent(payload, signature);
+
+        assertEquals("a@example.com", event.data.get("to"));
+    }
+
+    @Test
+    public void testConstructEventsInParallel() throws Exception {
+        Webhook localWebhook = new Webhook("local_secret");
+        long timestamp = System.currentTimeMillis() / 1000;
+
+        List<WebhookPayload> payloads = new ArrayList<>();
+
+        for (int i = 0; i < 100; i++) {
+            String payload = "{\"version\":1,\"id\":\"" + i + "\",\"type\":\"email.created\"}";
+            payloads.add(new WebhookPayload(payload, "t=" + timestamp + ",v2=" + sign("local_secret", timestamp, payload)));
+        }
+
+        payloads.set(10, new WebhookPayload("{}", "t=" + timestamp + ",v2=invalid_signature"));
+        payloads.set(20, new WebhookPayload("{}", "123"));
+        payloads.set(30, new WebhookPayload("not json", "t=" + timestamp + ",v2=" + sign("local_secret", timestamp, "not json")));
+
+        List<WebhookResult> results = localWebhook.constructEvents(payloads, 5, 4);
+
+        assertEquals(100, results.size());
+        assertEquals(Webhook.FailureReason.SIGNATURE_MISMATCH, results.get(10).getFailureReason());
+        assertEquals(Webhook.FailureReason.INVALID_FORMAT, results.get(20).getFailureReason());
+        assertEquals(Webhook.FailureReason.INVALID_PAYLOAD, results.get(30).getFailureReason());
+
+        for (int i = 0; i < 100; i++) {
+            if (i != 10 && i != 20 && i != 30) {
+                assertTrue(results.get(i).isValid());
+                assertEquals(Integer.toString(i), results.get(i).getEvent().id);
+            }
+        }
+    }
+
+    @Test
+    public void testConstructEventsSplitsBatchesAcrossExecutor() throws Exception {
+        Webhook localWebhook = new Webhook("local_secret");
+        long timestamp = System.currentTimeMillis() / 1000;
+
+        List<WebhookPayload> payloads = new ArrayList<>();
+
+        for (int i = 0; i < 1000; i++) {
+            String payload = "{\"version\":1,\"id\":\"" + i + "\",\"type\":\"email.created\"}";
+            String signature = "t=" + timestamp + ",v2=" + sign("local_secret", timestamp, payload);
+            payloads.add(new WebhookPayload(payload, signature));
+        }
+
+        AtomicInteger tasks = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+
+        try {
+            List<WebhookResult> results = localWebhook.constructEvents(payloads, 5, 4, task -> {
+                tasks.incrementAndGet();
+                executor.execute(task);
+            });
+
+            assertEquals("the calling thread should verify one slice itself", 3, tasks.get());
+            assertEquals(1000, results.size());
+
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(Integer.toString(i), results.get(i).getEvent().id);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        List<WebhookResult> streamed = localWebhook.constructEvents(payloads.stream(), 5, 2);
+
+        assertEquals(1000, streamed.size());
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Integer.toString(i), streamed.get(i).getEvent().id);
+        }
+    }
+
+    @Test
+    public void testConstructEventFromStream() throws Exception {
+        Webhook localWebhook = new Webhook("local_secret");
+
+        StringBuilder to = new StringBuilder();
+
+        for (int i = 0; i < 5000; i++) {
+            to.append('a');
+        }
+
+        String payload = "{\"version\":1,\"type\":\"email.created\",\"data\":{\"to\":\"" + to + "\"}}";
+        long timestamp = System.currentTimeMillis() / 1000;
+        String signature = "t=" + timestamp + ",v2=" + sign("local_secret", timestamp, payload);
+
+        // Return a few bytes per read, as a network stream would
+        InputStream body = new ByteArrayInputStream(payload.getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public synchronized int read(byte[] bytes, int offset, int length) {
+                return super.read(bytes, offset, Math.min(length, 7));
+            }
+        };
+
+        WebhookEvent event = localWebhook.constructEvent(body, signature, 5, 64 * 1024);
+
+        assertEquals(to.toString(), event.data.get("to"));
+
+        try {
+            localWebhook.constructEvent(new ByteArrayInputStream(payload.getBytes(StandardCharsets.UTF_8)),
+                    signature, 5, 1024);
+
+            fail("should throw InvalidSignatureException");
+        } catch (InvalidSignatureException e) {
+            assertEquals(Webhook.FailureReason.PAYLOAD_TOO_LARGE, e.getReason());
+        }
+
+        // The thread's Mac must not keep the partial body from the rejected stream
+        assertEquals(to.toString(), localWebhook.constructEvent(payload, signature).data.get("to"));
+    }
+
+    @Test
+    public void testStreamNotReadWhenHeaderIsInvalid() throws Exception {
+        Webhook localWebhook = new Webhook("local_secret");
+
+        InputStream body = new InputStream() {
+            @Override
+            public int read() {
+                throw new AssertionError("body should not be read");
+            }
+        };
+
+        try {
+            localWebhook.constructEvent(body, "t=1,v2=invalid", 5, 1024);
+
+            fail("should throw InvalidSignatureException");
+        } catch (InvalidSignatureException e) {
+            assertEquals(Webhook.FailureReason.TIMESTAMP_OUTSIDE_TOLERANCE, e.getReason());
+        }
+    }
+
+    private static String sign(String secret, long timestamp, String payload) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        byte[] digest = mac.doFinal((timestamp + "." + payload).getBytes(StandardCharsets.UTF_8));
+
+        return Base64.getEncoder().withoutPadding().encodeToString(digest);
+    }
 }
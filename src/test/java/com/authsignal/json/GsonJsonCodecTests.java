@@ -0,0 +1,208 @@
+package com.authsignal.json;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import com.authsignal.model.*;
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+public class GsonJsonCodecTests {
+    private final GsonJsonCodec codec = new GsonJsonCodec();
+
+    @Test
+    public void testTrackAttributesMatchReflectiveOutput() {
+        TrackAttributes attributes = new TrackAttributes();
+        attributes.email = "test@example.com";
+        attributes.redirectToSettings = true;
+        attributes.custom = new HashMap<>();
+        attributes.custom.put("foo", "bar");
+        attributes.custom.put("baz", 1);
+
+        String expected = new Gson().toJson(attributes);
+
+        assertEquals(expected, codec.toJson(attributes));
+        assertEquals(expected, new String(codec.toBytes(attributes), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testTrackResponseRoundTrip() {
+        String json = "{\"idempotencyKey\":\"key\",\"state\":\"CHALLENGE_REQUIRED\",\"url\":\"https://example.com\","
+                + "\"token\":\"token\",\"isEnrolled\":true,\"allowedVerificationMethods\":[\"SMS\",\"PASSKEY\"],"
+                + "\"enrolledVerificationMethods\":[\"SMS\"],\"defaultVerificationMethod\":\"SMS\","
+                + "\"ruleIds\":[\"rule\"],\"unknown\":{\"nested\":[1,2]}}";
+
+        TrackResponse response = codec.fromBytes(json.getBytes(StandardCharsets.UTF_8), TrackResponse.class);
+
+        assertEquals(UserActionState.CHALLENGE_REQUIRED, response.state);
+        assertEquals(VerificationMethodType.PASSKEY, response.allowedVerificationMethods[1]);
+        assertEquals("rule", response.ruleIds[0]);
+        assertTrue(response.isEnrolled);
+
+        assertEquals(new Gson().toJson(response), codec.toJson(response));
+    }
+
+    @Test
+    public void testValidateChallengeResponseUsesActionCode() {
+        String json = "{\"isValid\":true,\"state\":\"ALLOW\",\"actionCode\":\"signIn\",\"userId\":null}";
+
+        ValidateChallengeResponse response = codec.fromJson(json, ValidateChallengeResponse.class);
+
+        assertEquals("signIn", response.action);
+        assertNull(response.userId);
+        assertEquals(new Gson().toJson(response), codec.toJson(response));
+    }
+
+    @Test
+    public void testUserAuthenticatorArray() {
+        String json = "[{\"userAuthenticatorId\":\"a\",\"verificationMethod\":\"PASSKEY\","
+                + "\"webauthnCredential\":{\"name\":\"key\",\"credentialBackedUp\":true,"
+                + "\"parsedUserAgent\":{\"browser\":{\"name\":\"Chrome\"}}}},"
+                + "{\"userAuthenticatorId\":\"b\",\"verificationMethod\":\"SMS\"}]";
+
+        UserAuthenticator[] authenticators = codec.fromJson(json, UserAuthenticator[].class);
+
+        assertEquals(2, authenticators.length);
+        assertEquals("Chrome", authenticators[0].webauthnCredential.parsedUserAgent.browser.name);
+        assertEquals(VerificationMethodType.SMS, authenticators[1].verificationMethod);
+        assertEquals(new Gson().toJson(authenticators), codec.toJson(authenticators));
+    }
+
+    @Test
+    public void testEveryFieldMatchesReflectiveGson() throws Exception {
+        Gson gson = new GsonBuilder().registerTypeAdapterFactory(new ModelTypeAdapterFactory()).create();
+
+        for (Class<?> model : ModelTypeAdapterFactory.MODELS) {
+            // The streaming adapter is in use, rather than having stepped aside for the reflective one
+            assertTrue(model.getSimpleName(), gson.getAdapter(model).getClass().getEnclosingClass()
+                    == ModelTypeAdapterFactory.class);
+
+            Object value = fill(model);
+            String expected = new Gson().toJson(value);
+
+            assertEquals(model.getSimpleName(), expected, codec.toJson(value));
+            Object parsed = codec.fromJson(expected, model);
+            Object decoded = codec.fromBytes(expected.getBytes(StandardCharsets.UTF_8), model);
+
+            assertEquals(model.getSimpleName(), expected, codec.toJson(parsed));
+            assertEquals(model.getSimpleName(), expected, new Gson().toJson(decoded));
+        }
+    }
+
+    @Test
+    public void testAdaptersHandleEveryModelField() {
+        // Fails when a field is added to, renamed in or removed from a model without updating its adapter
+        for (Class<?> model : ModelTypeAdapterFactory.MODELS) {
+            assertEquals(model.getSimpleName(), ModelTypeAdapterFactory.jsonNames(model),
+                    ModelTypeAdapterFactory.handledNames(model));
+        }
+    }
+
+    @Test
+    public void testReadsValuesAsLenientlyAsReflectiveGson() {
+        String json = "{\"isValid\":\"true\",\"userId\":42}";
+
+        ValidateChallengeResponse response = codec.fromJson(json, ValidateChallengeResponse.class);
+        ValidateChallengeResponse expected = new Gson().fromJson(json, ValidateChallengeResponse.class);
+
+        assertEquals(expected.isValid, response.isValid);
+        assertEquals(expected.userId, response.userId);
+    }
+
+    @Test
+    public void testRegisteredAdapterTakesPrecedence() {
+        TypeAdapter<TrackResponse> keyOnly = new TypeAdapter<TrackResponse>() {
+            @Override
+            public void write(JsonWriter out, TrackResponse value) throws IOException {
+                out.value(value.idempotencyKey);
+            }
+
+            @Override
+            public TrackResponse read(JsonReader in) throws IOException {
+                TrackResponse response = new TrackResponse();
+                response.idempotencyKey = in.nextString();
+                return response;
+            }
+        };
+
+        GsonBuilder builder = new GsonBuilder().registerTypeAdapter(TrackResponse.class, keyOnly);
+        GsonJsonCodec customCodec = new GsonJsonCodec(builder);
+        TrackResponse response = customCodec.fromJson("\"key\"", TrackResponse.class);
+
+        assertEquals("key", response.idempotencyKey);
+        assertEquals("\"key\"", customCodec.toJson(response));
+    }
+
+    @Test
+    public void testBuilderSettingsAreHonored() throws Exception {
+        GsonBuilder builder = new GsonBuilder()
+                .setFieldNamingPolicy(FieldNamingPolicy.UPPER_CAMEL_CASE)
+                .serializeNulls();
+
+        GsonJsonCodec customCodec = new GsonJsonCodec(builder);
+        Gson expected = new GsonBuilder()
+                .setFieldNamingPolicy(FieldNamingPolicy.UPPER_CAMEL_CASE)
+                .serializeNulls()
+                .create();
+
+        TrackAttributes attributes = new TrackAttributes();
+        attributes.email = "test@example.com";
+
+        assertEquals(expected.toJson(attributes), customCodec.toJson(attributes));
+        assertEquals(expected.toJson(fill(UserAuthenticator.class)), customCodec.toJson(fill(UserAuthenticator.class)));
+    }
+
+    /**
+     * Builds a model with every field set, so a field an adapter does not handle shows up as a
+     * difference from the reflective output.
+     */
+    private static Object fill(Class<?> type) throws Exception {
+        Object value = type.getDeclaredConstructor().newInstance();
+
+        for (Class<?> current = type; current != Object.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) || Modifier.isTransient(field.getModifiers())) {
+                    continue;
+                }
+
+                field.setAccessible(true);
+                field.set(value, sample(field.getType(), field.getName()));
+            }
+        }
+
+        return value;
+    }
+
+    private static Object sample(Class<?> type, String name) throws Exception {
+        if (type == String.class) {
+            return name + "-value";
+        } else if (type == Boolean.class || type == boolean.class) {
+            return true;
+        } else if (type.isEnum()) {
+            Object[] constants = type.getEnumConstants();
+            return constants[constants.length - 1];
+        } else if (type.isArray()) {
+            Object array = java.lang.reflect.Array.newInstance(type.getComponentType(), 2);
+            java.lang.reflect.Array.set(array, 0, sample(type.getComponentType(), name + "0"));
+            java.lang.reflect.Array.set(array, 1, sample(type.getComponentType(), name + "1"));
+            return array;
+        } else if (type == java.util.Map.class) {
+            HashMap<String, Object> map = new HashMap<>();
+            map.put(name, "value");
+            map.put("nested", new HashMap<>(map));
+            return map;
+        }
+
+        return fill(type);
+    }
+}
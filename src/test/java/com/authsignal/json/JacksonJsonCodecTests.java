@@ -0,0 +1,50 @@
+package com.authsignal.json;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import com.authsignal.model.*;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+public class JacksonJsonCodecTests {
+    private final JacksonJsonCodec codec = new JacksonJsonCodec(new ObjectMapper());
+    private final GsonJsonCodec gsonCodec = new GsonJsonCodec();
+
+    @Test
+    public void testSerializationMatchesGson() {
+        TrackAttributes attributes = new TrackAttributes();
+        attributes.email = "test@example.com";
+        attributes.redirectToSettings = true;
+        attributes.custom = new HashMap<>();
+        attributes.custom.put("foo", "bar");
+
+        assertEquals(gsonCodec.toJson(attributes), codec.toJson(attributes));
+        assertEquals(gsonCodec.toJson(attributes), new String(codec.toBytes(attributes), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testHonorsSerializedName() {
+        String json = "{\"isValid\":true,\"state\":\"ALLOW\",\"actionCode\":\"signIn\",\"unknown\":1}";
+
+        ValidateChallengeResponse response = codec.fromBytes(json.getBytes(StandardCharsets.UTF_8),
+                ValidateChallengeResponse.class);
+
+        assertEquals("signIn", response.action);
+        assertEquals(UserActionState.ALLOW, response.state);
+        assertTrue(codec.toJson(response).contains("\"actionCode\":\"signIn\""));
+    }
+
+    @Test
+    public void testArraysAndEmptyBody() {
+        String json = "[{\"userAuthenticatorId\":\"a\",\"verificationMethod\":\"SMS\"}]";
+
+        UserAuthenticator[] authenticators = codec.fromJson(json, UserAuthenticator[].class);
+
+        assertEquals(1, authenticators.length);
+        assertEquals(VerificationMethodType.SMS, authenticators[0].verificationMethod);
+        assertNull(codec.fromBytes(new byte[0], UserAuthenticator[].class));
+    }
+}